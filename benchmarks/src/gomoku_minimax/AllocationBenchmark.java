@@ -0,0 +1,56 @@
+package gomoku_minimax;
+
+import java.lang.management.ManagementFactory;
+
+// Measures the heap allocated by the heuristic update path and by a whole search on a fixed middle-game position
+// Run with: gradle :benchmarks:allocationBenchmark
+public class AllocationBenchmark {
+    private static final int[][] POSITION = {{7, 7}, {7, 8}, {8, 8}, {6, 6}, {8, 7}, {8, 9}, {6, 8}, {9, 9}, {5, 9}};
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        GomokuGame game = new GomokuGame(15);
+        for (int[] move : POSITION) {
+            game.move(move[0], move[1]);
+        }
+        GomokuGameAI agent = new GomokuGameAI(game, 3);
+        agent.rebuildHeuristics();
+        Bitboard board = game.getBoardCopy();
+
+        // Warm up first so the measurement sees compiled code
+        simulateEveryCell(agent, board, game.getCurrentPlayer(), 200);
+        long before = threads.getCurrentThreadAllocatedBytes();
+        long moves = simulateEveryCell(agent, board, game.getCurrentPlayer(), 2000);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        System.out.printf("simulateMove: %d calls, %.3f bytes per call%n", moves, (double) allocated / moves);
+
+        // Clear the transposition table before every search so each one visits the full tree
+        for (int i = 0; i < 3; i++) {
+            agent.table.clear();
+            agent.findBestMove();
+        }
+        agent.table.clear();
+        before = threads.getCurrentThreadAllocatedBytes();
+        agent.findBestMove();
+        allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        System.out.printf("findBestMove: %d nodes, %.1f bytes per node%n", agent.getNodeCount(), (double) allocated / agent.getNodeCount());
+    }
+
+    // Play and take back a stone on every empty cell, and return the number of simulateMove calls
+    private static long simulateEveryCell(GomokuGameAI agent, Bitboard board, int player, int rounds) {
+        long calls = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (int x = 0; x < board.size; x++) {
+                for (int y = 0; y < board.size; y++) {
+                    if (board.isEmpty(x, y)) {
+                        agent.simulateMove(board, x, y, player);
+                        agent.simulateMove(board, x, y, 0);
+                        calls += 2;
+                    }
+                }
+            }
+        }
+        return calls;
+    }
+}
@@ -0,0 +1,101 @@
+package gomoku_minimax;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Hot paths of the engine on a fixed suite of opening, middle-game and crowded positions
+// Run with: gradle :benchmarks:jmh (the GC profiler is on, so allocation rates are reported next to the timings)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EngineBenchmark {
+    private static final int[][] OPENING = {{7, 7}, {7, 8}, {8, 8}};
+    private static final int[][] MIDDLE = {{7, 7}, {7, 8}, {8, 8}, {6, 6}, {8, 7}, {8, 9}, {6, 8}, {9, 9}, {5, 9}};
+    private static final int[][] CROWDED = {
+            {8, 5}, {9, 10}, {9, 3}, {6, 10}, {4, 7}, {6, 4}, {8, 4}, {9, 4}, {9, 6}, {7, 4},
+            {10, 6}, {4, 5}, {11, 11}, {8, 11}, {3, 3}, {5, 3}, {6, 3}, {4, 11}, {11, 7}, {11, 4},
+            {8, 10}, {7, 8}, {7, 9}, {10, 9}, {10, 5}, {8, 8}, {5, 5}, {10, 11}, {8, 7}, {9, 8},
+            {3, 4}, {11, 5}, {5, 11}, {7, 10}, {6, 8}, {4, 6}, {3, 8}, {4, 9}, {10, 10}, {7, 7}};
+
+    @Param({"opening", "middle", "crowded"})
+    public String position;
+
+    private GomokuGame game;
+    private GomokuGameAI agent;
+    private Bitboard board;
+    private int[] lastMove;
+    private int[] candidate;
+    private int[] row;
+    private int player;
+    private int opponent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[][] moves = position.equals("opening") ? OPENING : position.equals("middle") ? MIDDLE : CROWDED;
+        game = new GomokuGame(15);
+        for (int[] move : moves) {
+            game.move(move[0], move[1]);
+        }
+        // A small table keeps clearing it cheap next to a whole search
+        agent = new GomokuGameAI(game, 3, 1);
+        agent.setThreatSearch(0, 0);
+        agent.rebuildHeuristics();
+        board = game.getBoardCopy();
+        lastMove = moves[moves.length - 1];
+        player = game.getCurrentPlayer();
+        opponent = (player == 1) ? 2 : 1;
+        candidate = agent.getActions(board).get(0);
+
+        row = new int[game.boardSize];
+        for (int i = 0; i < game.boardSize; i++) {
+            row[i] = board.get(lastMove[0], i);
+        }
+    }
+
+    @Benchmark
+    public boolean checkWin() {
+        return game.checkWin(lastMove[0], lastMove[1], board);
+    }
+
+    // A make and unmake pair, as the search always uses them
+    @Benchmark
+    public int simulateMove() {
+        agent.simulateMove(board, candidate[0], candidate[1], player);
+        agent.simulateMove(board, candidate[0], candidate[1], 0);
+        return agent.patterns.counters.get(player).openTwo;
+    }
+
+    @Benchmark
+    public int checkLinePatterns() {
+        GomokuGameAI.HeuristicCounter counter = new GomokuGameAI.HeuristicCounter();
+        agent.checkLinePatterns(row, player, counter, false);
+        return counter.openTwo;
+    }
+
+    @Benchmark
+    public ArrayList<int[]> getActions() {
+        return agent.getActions(board);
+    }
+
+    @Benchmark
+    public ArrayList<int[]> sortActions() {
+        return agent.sortActions(board, player, opponent, true, agent.getActions(board));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int[] findBestMove() {
+        agent.table.clear();
+        return agent.findBestMove();
+    }
+}
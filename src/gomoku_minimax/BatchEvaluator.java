@@ -0,0 +1,240 @@
+package gomoku_minimax;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Labels a file of positions with the engine's move, score and pattern counts, streaming it line by line
+// Positions are searched in parallel, but only a small window of them is in flight at any time and results are
+// written in input order as soon as the oldest one is done, so memory stays flat however long the file is
+//
+// Input: one position per line, an optional id and a tab, then the moves leading to it as h8 (column letter, row
+// number), e.g. "p17<tab>h8 i9 h9". Blank lines and lines starting with # are skipped, and the line number is the id if
+// none is given
+// Output: tab separated id, move, score (for the side to move), depth, nodes, then the seven counts (five, open four,
+// closed four, open three, closed three, open two, closed two) of black and then of white, or the id and ERROR and why
+// Files ending in .gz are read and written compressed
+//
+// Usage: BatchEvaluator --in positions.txt [--out labels.tsv] [--size 15] [--depth 3] [--time 0] [--table 16]
+//                       [--threats on] [--threads N]
+public class BatchEvaluator {
+    // Evaluation of one position
+    public static class Result {
+        final String id;
+        final int[] move;
+        final int score;
+        final int depth;
+        final long nodes;
+        final GomokuGameAI.HeuristicCounter black;
+        final GomokuGameAI.HeuristicCounter white;
+        final String error;
+
+        Result(String id, int[] move, int score, int depth, long nodes, GomokuGameAI.HeuristicCounter black,
+               GomokuGameAI.HeuristicCounter white) {
+            this.id = id;
+            this.move = move;
+            this.score = score;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.black = black;
+            this.white = white;
+            this.error = null;
+        }
+
+        Result(String id, String error) {
+            this.id = id;
+            this.move = null;
+            this.score = 0;
+            this.depth = 0;
+            this.nodes = 0;
+            this.black = null;
+            this.white = null;
+            this.error = error;
+        }
+
+        public int[] getMove() {return move == null ? null : move.clone();}
+        public int getScore() {return score;}
+        public boolean isError() {return error != null;}
+
+        @Override
+        public String toString() {
+            if (error != null) {
+                return id + "\tERROR\t" + error;
+            }
+            return id + "\t" + MoveNotation.formatMove(move[0], move[1]) + "\t" + score + "\t" + depth + "\t" + nodes
+                    + "\t" + counts(black) + "\t" + counts(white);
+        }
+
+        private static String counts(GomokuGameAI.HeuristicCounter counter) {
+            return counter.five + "\t" + counter.openFour + "\t" + counter.closedFour + "\t" + counter.openThree
+                    + "\t" + counter.closedThree + "\t" + counter.openTwo + "\t" + counter.closedTwo;
+        }
+    }
+
+    private final int boardSize;
+    private final long timeMillis;
+    private final int threads;
+    // One engine per worker, kept for the whole run so its tables are allocated once
+    private final ThreadLocal<GomokuGameAI> engines;
+
+    // timeMillis above 0 searches each position for that long instead of to a fixed depth
+    BatchEvaluator(int boardSize, int depth, long timeMillis, int tableMB, boolean threats, int threads) {
+        if (depth < 1 || threads < 1) {
+            throw new IllegalArgumentException("Depth and threads should be at least 1");
+        }
+        MoveNotation.checkBoardSize(boardSize);
+        this.boardSize = boardSize;
+        this.timeMillis = timeMillis;
+        this.threads = threads;
+        this.engines = ThreadLocal.withInitial(() -> {
+            GomokuGameAI engine = new GomokuGameAI(new GomokuGame(boardSize), depth, tableMB);
+            if (!threats) {
+                engine.setThreatSearch(0, 0);
+            }
+            // setGame then counts the patterns of each position once, and the search starts from them
+            engine.startSession();
+            return engine;
+        });
+    }
+
+    // Evaluate the position of one input line on the calling thread
+    Result evaluate(String id, String line) {
+        int tab = line.indexOf('\t');
+        if (tab >= 0) {
+            id = line.substring(0, tab);
+            line = line.substring(tab + 1);
+        }
+        GomokuGame game = new GomokuGame(boardSize);
+        try {
+            MoveNotation.play(game, line);
+        }
+        catch (IllegalArgumentException e) {
+            return new Result(id, e.getMessage());
+        }
+        if (game.isGameOver()) {
+            return new Result(id, "game is over");
+        }
+
+        GomokuGameAI engine = engines.get();
+        engine.setGame(game);
+        // The counts of the position, copied as the engine keeps changing its own
+        GomokuGameAI.HeuristicCounter black = new GomokuGameAI.HeuristicCounter();
+        GomokuGameAI.HeuristicCounter white = new GomokuGameAI.HeuristicCounter();
+        black.set(engine.patterns.counters.get(1));
+        white.set(engine.patterns.counters.get(2));
+        int[] move = timeMillis > 0 ? engine.findBestMoveBefore(System.currentTimeMillis() + timeMillis) : engine.findBestMove();
+        return new Result(id, move, engine.getBestScore(), engine.getCompletedDepth(), engine.getNodeCount(), black, white);
+    }
+
+    // Evaluate every position of the input and write a result line for each, in input order, returning the count
+    long run(BufferedReader in, Writer out) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "gomoku-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Enough positions in flight to keep every worker busy while the oldest one finishes
+        int window = threads * 4;
+        ArrayDeque<Future<Result>> pending = new ArrayDeque<>(window);
+        long count = 0;
+        long lineNumber = 0;
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                if (pending.size() == window) {
+                    write(pending.removeFirst(), out);
+                }
+                String id = Long.toString(lineNumber);
+                String position = line;
+                pending.addLast(pool.submit(() -> evaluate(id, position)));
+                count++;
+            }
+            while (!pending.isEmpty()) {
+                write(pending.removeFirst(), out);
+            }
+        }
+        finally {
+            pool.shutdownNow();
+            out.flush();
+        }
+        return count;
+    }
+
+    private static void write(Future<Result> result, Writer out) throws IOException, InterruptedException {
+        try {
+            out.write(result.get().toString());
+            out.write('\n');
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Evaluation failed", e.getCause());
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String in = null;
+        String out = "labels.tsv";
+        int size = 15;
+        int depth = 3;
+        long time = 0;
+        int table = GomokuGameAI.DEFAULT_TABLE_SIZE;
+        boolean threats = true;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--in": in = value; break;
+                case "--out": out = value; break;
+                case "--size": size = Integer.parseInt(value); break;
+                case "--depth": depth = Integer.parseInt(value); break;
+                case "--time": time = Long.parseLong(value); break;
+                case "--table": table = Integer.parseInt(value); break;
+                case "--threats": threats = value.equals("on"); break;
+                case "--threads": threads = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (in == null) {
+            throw new IllegalArgumentException("Missing --in");
+        }
+
+        BatchEvaluator evaluator = new BatchEvaluator(size, depth, time, table, threats, threads);
+        long start = System.nanoTime();
+        long count;
+        InputStream input = Files.newInputStream(Paths.get(in));
+        OutputStream output = Files.newOutputStream(Paths.get(out));
+        if (in.endsWith(".gz")) {
+            input = new GZIPInputStream(input, 1 << 16);
+        }
+        if (out.endsWith(".gz")) {
+            output = new GZIPOutputStream(output, 1 << 16);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.US_ASCII), 1 << 16);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.US_ASCII), 1 << 16)) {
+            count = evaluator.run(reader, writer);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Evaluated %d positions in %.1f s (%.0f per second) to %s%n", count, seconds, count / seconds, out);
+    }
+}
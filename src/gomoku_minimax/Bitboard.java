@@ -0,0 +1,142 @@
+package gomoku_minimax;
+
+import java.util.SplittableRandom;
+
+// Packed board representation
+// Every row, column and diagonal is stored as one long mask per player, where bit i is the i-th cell along the line
+// Rows use bit y, columns bit x, and both diagonal directions bit x
+// A Zobrist hash of the position is kept up to date on every set
+// Lines being single longs caps the board size, and nothing here depends on the area of the board
+public class Bitboard {
+    // One bit of every line stays past its last cell, so the 6-cell pattern windows can read beyond the edge
+    public static final int MAX_SIZE = 63;
+    // Zobrist keys of each board size, made on first use and shared by every board of that size
+    private static final long[][][] KEYS = new long[MAX_SIZE + 1][][];
+
+    final int size;
+    // Random key per (player, cell), generated from a fixed seed so equal positions always hash equally
+    private final long[][] zobristKeys;
+    private long hash;
+    private final long[][] rows;
+    private final long[][] columns;
+    // Diagonal down (x and y both increasing) is indexed by y - x + size - 1
+    private final long[][] diagonalsDown;
+    // Diagonal up (x increasing, y decreasing) is indexed by x + y
+    private final long[][] diagonalsUp;
+
+    public Bitboard(int size) {
+        if (size < 1 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Board size should be between 1 and " + MAX_SIZE);
+        }
+        this.size = size;
+        this.zobristKeys = keys(size);
+        this.hash = 0;
+        this.rows = new long[2][size];
+        this.columns = new long[2][size];
+        this.diagonalsDown = new long[2][2 * size - 1];
+        this.diagonalsUp = new long[2][2 * size - 1];
+    }
+
+    private static synchronized long[][] keys(int size) {
+        if (KEYS[size] == null) {
+            long[][] keys = new long[2][size * size];
+            SplittableRandom random = new SplittableRandom(0x9E3779B97F4A7C15L ^ size);
+            for (int p = 0; p < 2; p++) {
+                for (int i = 0; i < size * size; i++) {
+                    keys[p][i] = random.nextLong();
+                }
+            }
+            KEYS[size] = keys;
+        }
+        return KEYS[size];
+    }
+
+    private Bitboard(Bitboard other) {
+        this.size = other.size;
+        this.zobristKeys = other.zobristKeys;
+        this.hash = other.hash;
+        this.rows = new long[][] {other.rows[0].clone(), other.rows[1].clone()};
+        this.columns = new long[][] {other.columns[0].clone(), other.columns[1].clone()};
+        this.diagonalsDown = new long[][] {other.diagonalsDown[0].clone(), other.diagonalsDown[1].clone()};
+        this.diagonalsUp = new long[][] {other.diagonalsUp[0].clone(), other.diagonalsUp[1].clone()};
+    }
+
+    public Bitboard copy() {
+        return new Bitboard(this);
+    }
+
+    // Return the player occupying the cell, or 0 if it is empty
+    public int get(int x, int y) {
+        long bit = 1L << y;
+        if ((rows[0][x] & bit) != 0) {
+            return 1;
+        }
+        if ((rows[1][x] & bit) != 0) {
+            return 2;
+        }
+        return 0;
+    }
+
+    public boolean isEmpty(int x, int y) {
+        return ((rows[0][x] | rows[1][x]) & (1L << y)) == 0;
+    }
+
+    // Place a stone of the given player on the cell, or clear the cell when player is 0
+    public void set(int x, int y, int player) {
+        int occupant = get(x, y);
+        if (occupant != 0) {
+            hash ^= zobristKeys[occupant - 1][x * size + y];
+        }
+        if (player != 0) {
+            hash ^= zobristKeys[player - 1][x * size + y];
+        }
+
+        int down = y - x + size - 1;
+        int up = x + y;
+        for (int p = 0; p < 2; p++) {
+            rows[p][x] &= ~(1L << y);
+            columns[p][y] &= ~(1L << x);
+            diagonalsDown[p][down] &= ~(1L << x);
+            diagonalsUp[p][up] &= ~(1L << x);
+        }
+        if (player != 0) {
+            int p = player - 1;
+            rows[p][x] |= 1L << y;
+            columns[p][y] |= 1L << x;
+            diagonalsDown[p][down] |= 1L << x;
+            diagonalsUp[p][up] |= 1L << x;
+        }
+    }
+
+    // Check whether the stone on (x, y) is part of five or more in a row
+    public boolean checkWin(int x, int y) {
+        int player = get(x, y);
+        if (player == 0) {
+            return false;
+        }
+        int p = player - 1;
+        return hasFive(rows[p][x], y)
+                || hasFive(columns[p][y], x)
+                || hasFive(diagonalsDown[p][y - x + size - 1], x)
+                || hasFive(diagonalsUp[p][x + y], x);
+    }
+
+    // Check whether the line has five consecutive set bits running through the given bit position
+    static boolean hasFive(long line, int position) {
+        // Bit i of runs is set when bits i to i + 4 are all set
+        long runs = line & (line >>> 1) & (line >>> 2) & (line >>> 3) & (line >>> 4);
+        // A run through the position must start between position - 4 and position
+        long starts = ((1L << (position + 1)) - 1) & ~((1L << Math.max(0, position - 4)) - 1);
+        return (runs & starts) != 0;
+    }
+
+    public long hash() {return hash;}
+    // Key the hash uses for a stone of the player on (x, y)
+    long zobristKey(int player, int x, int y) {return zobristKeys[player - 1][x * size + y];}
+
+    // Line accessors, player is 1 or 2
+    public long row(int player, int x) {return rows[player - 1][x];}
+    public long column(int player, int y) {return columns[player - 1][y];}
+    public long diagonalDown(int player, int x, int y) {return diagonalsDown[player - 1][y - x + size - 1];}
+    public long diagonalUp(int player, int x, int y) {return diagonalsUp[player - 1][x + y];}
+}
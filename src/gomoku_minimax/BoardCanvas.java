@@ -0,0 +1,187 @@
+package gomoku_minimax;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+// The board drawn on a single canvas instead of a node per cell, stones on the intersections
+// Only the cells whose stone or overlay changed are drawn again, so an update costs the same on any board size
+// The optional overlay shades the candidate cells by the engine's heuristic scores. The search thread hands over its
+// scores whenever it has new ones and the window takes the latest at most FRAMES_PER_SECOND times a second, so the
+// search never waits on drawing and scores replaced before a frame are never drawn
+// Everything but showScores and clearScores runs on the FX thread
+public class BoardCanvas extends Canvas {
+    private static final int FRAMES_PER_SECOND = 15;
+    // Shades of the overlay, a cell is only drawn again when its shade changes
+    private static final int HEAT_LEVELS = 8;
+    private static final Color BOARD_COLOR = Color.web("#FFF2D7");
+    private static final Color HEAT_COLOR = Color.rgb(220, 40, 40);
+
+    private final int size;
+    private final double box;
+    // What each cell x * size + y shows: its stone, and its overlay shade from 0 (none) to HEAT_LEVELS
+    private final int[] stones;
+    private final int[] heat;
+    // Scratch of applyScores: the shade each cell should get, and the scores packed with their index for sorting
+    private final int[] shades;
+    private final long[] order;
+    private volatile boolean overlay = false;
+    // Latest scores from the search thread not drawn yet, as {cells, scores}
+    private final AtomicReference<int[][]> pendingScores = new AtomicReference<>();
+
+    // box is the distance between two lines in pixels, the board keeps one box of margin around the intersections
+    public BoardCanvas(int size, double box) {
+        super(box * (size + 1), box * (size + 1));
+        this.size = size;
+        this.box = box;
+        this.stones = new int[size * size];
+        this.heat = new int[size * size];
+        this.shades = new int[size * size];
+        this.order = new long[size * size];
+        new AnimationTimer() {
+            private long lastFrame = 0;
+
+            @Override
+            public void handle(long now) {
+                if (now - lastFrame >= 1_000_000_000L / FRAMES_PER_SECOND) {
+                    lastFrame = now;
+                    applyScores();
+                }
+            }
+        }.start();
+        drawAll();
+    }
+
+    public void setStone(int x, int y, int player) {
+        stones[x * size + y] = player;
+        drawCell(x, y);
+    }
+
+    // Empty the board and the overlay
+    public void clear() {
+        Arrays.fill(stones, 0);
+        Arrays.fill(heat, 0);
+        pendingScores.set(null);
+        drawAll();
+    }
+
+    public void setOverlay(boolean overlay) {
+        this.overlay = overlay;
+        if (!overlay) {
+            clearScores();
+        }
+    }
+
+    public boolean isOverlay() {return overlay;}
+
+    // Any thread: shade the first count cells x * size + y by their scores, higher being better, in place of the
+    // shades shown so far. The arrays are copied, and nothing is kept while the overlay is off
+    public void showScores(int[] cells, int[] scores, int count) {
+        if (overlay) {
+            pendingScores.set(new int[][] {Arrays.copyOf(cells, count), Arrays.copyOf(scores, count)});
+        }
+    }
+
+    // Any thread: take the overlay off every cell at the next frame
+    public void clearScores() {
+        pendingScores.set(new int[][] {new int[0], new int[0]});
+    }
+
+    // Cell {x, y} whose stone area holds the point, or null, x being the row as in the game
+    public int[] cellAt(double pointX, double pointY) {
+        int x = (int) Math.round(pointY / box) - 1;
+        int y = (int) Math.round(pointX / box) - 1;
+        if (x < 0 || x >= size || y < 0 || y >= size) {
+            return null;
+        }
+        double dx = pointX - box * (y + 1);
+        double dy = pointY - box * (x + 1);
+        return dx * dx + dy * dy <= 0.16 * box * box ? new int[] {x, y} : null;
+    }
+
+    // Shade the cells of the latest scores by rank, equal scores sharing a shade, and draw the cells that changed
+    private void applyScores() {
+        int[][] scores = pendingScores.getAndSet(null);
+        if (scores == null) {
+            return;
+        }
+        int[] cells = scores[0];
+        int[] values = scores[1];
+        int count = cells.length;
+        // Score in the high half and index in the low half, so sorting the longs sorts by score
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) values[i] << 32) | i;
+        }
+        Arrays.sort(order, 0, count);
+
+        Arrays.fill(shades, 0);
+        int rank = 0;
+        // Best score first
+        for (int i = 0; i < count; i++) {
+            long key = order[count - 1 - i];
+            if (i > 0 && (key >> 32) != (order[count - i] >> 32)) {
+                rank = i;
+            }
+            shades[cells[(int) key]] = HEAT_LEVELS - rank * (HEAT_LEVELS - 1) / Math.max(1, count - 1);
+        }
+        for (int cell = 0; cell < shades.length; cell++) {
+            if (shades[cell] != heat[cell]) {
+                heat[cell] = shades[cell];
+                drawCell(cell / size, cell % size);
+            }
+        }
+    }
+
+    private void drawAll() {
+        GraphicsContext graphics = getGraphicsContext2D();
+        double length = box * (size + 1);
+        graphics.setFill(BOARD_COLOR);
+        graphics.fillRect(0, 0, length, length);
+        graphics.setStroke(Color.BLACK);
+        graphics.setLineWidth(1.5);
+        for (int i = 0; i <= size + 1; i++) {
+            graphics.strokeLine(0, i * box, length, i * box);
+            graphics.strokeLine(i * box, 0, i * box, length);
+        }
+        for (int cell = 0; cell < stones.length; cell++) {
+            if (stones[cell] != 0 || heat[cell] != 0) {
+                drawCell(cell / size, cell % size);
+            }
+        }
+    }
+
+    // Draw the square of one box around the intersection, which holds its two line segments and nothing of its
+    // neighbours
+    private void drawCell(int x, int y) {
+        GraphicsContext graphics = getGraphicsContext2D();
+        double centerX = box * (y + 1);
+        double centerY = box * (x + 1);
+        double half = box / 2;
+        graphics.setFill(BOARD_COLOR);
+        graphics.fillRect(centerX - half, centerY - half, box, box);
+        graphics.setStroke(Color.BLACK);
+        graphics.setLineWidth(1.5);
+        graphics.strokeLine(centerX - half, centerY, centerX + half, centerY);
+        graphics.strokeLine(centerX, centerY - half, centerX, centerY + half);
+
+        int cell = x * size + y;
+        if (stones[cell] == 0 && heat[cell] > 0) {
+            double radius = 0.3 * box;
+            graphics.setFill(HEAT_COLOR.deriveColor(0, 1, 1, 0.75 * heat[cell] / HEAT_LEVELS));
+            graphics.fillOval(centerX - radius, centerY - radius, 2 * radius, 2 * radius);
+        }
+        else if (stones[cell] != 0) {
+            // Set colors to players
+            double radius = 0.4 * box;
+            graphics.setFill(stones[cell] == 1 ? Color.BLACK : Color.WHITE);
+            graphics.setStroke(stones[cell] == 1 ? Color.WHITE : Color.BLACK);
+            graphics.setLineWidth(1);
+            graphics.fillOval(centerX - radius, centerY - radius, 2 * radius, 2 * radius);
+            graphics.strokeOval(centerX - radius, centerY - radius, 2 * radius, 2 * radius);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package gomoku_minimax;
+
+// Empty cells near stones, kept up to date as stones are placed and removed instead of rescanning the board
+// Each stone adds weight 2 to the 8 cells next to it and weight 1 to the 8 cells two steps away along its lines
+// An empty cell with weight 2 or more (next to a stone, or two steps away from two stones) is a candidate move
+public class CandidateMoves {
+    private static final int[][] DIRECTIONS = {{0, 1}, {0, -1}, {1, 0}, {-1, 0}, {1, 1}, {-1, -1}, {1, -1}, {-1, 1}};
+
+    private final int size;
+    private final int[] weights;
+    // Bit y of rows[x] is set when (x, y) is a candidate, and bit y of occupied[x] when it holds a stone
+    private final long[] rows;
+    private final long[] occupied;
+    private int count;
+
+    public CandidateMoves(int size) {
+        this.size = size;
+        this.weights = new int[size * size];
+        this.rows = new long[size];
+        this.occupied = new long[size];
+        this.count = 0;
+    }
+
+    public void place(int x, int y) {
+        occupied[x] |= 1L << y;
+        refresh(x, y);
+        addWeights(x, y, 1);
+    }
+
+    public void remove(int x, int y) {
+        occupied[x] &= ~(1L << y);
+        addWeights(x, y, -1);
+        refresh(x, y);
+    }
+
+    private void addWeights(int x, int y, int sign) {
+        for (int[] direction : DIRECTIONS) {
+            for (int step = 1; step <= 2; step++) {
+                int newX = x + step * direction[0];
+                int newY = y + step * direction[1];
+                if (newX >= 0 && newX < size && newY >= 0 && newY < size) {
+                    weights[newX * size + newY] += sign * (step == 1 ? 2 : 1);
+                    refresh(newX, newY);
+                }
+            }
+        }
+    }
+
+    // Update the candidate bit of a cell from its weight and occupancy
+    private void refresh(int x, int y) {
+        long bit = 1L << y;
+        boolean candidate = (occupied[x] & bit) == 0 && weights[x * size + y] >= 2;
+        if (candidate && (rows[x] & bit) == 0) {
+            rows[x] |= bit;
+            count++;
+        }
+        else if (!candidate && (rows[x] & bit) != 0) {
+            rows[x] &= ~bit;
+            count--;
+        }
+    }
+
+    public boolean contains(int x, int y) {return (rows[x] & (1L << y)) != 0;}
+    // Candidate bits of a row, iterate them in row-major order for a deterministic move order
+    public long row(int x) {return rows[x];}
+    public int count() {return count;}
+}
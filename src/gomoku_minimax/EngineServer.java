@@ -0,0 +1,151 @@
+package gomoku_minimax;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+// Local analysis service: every connection is its own game session speaking the piskvork protocol, as PiskvorkEngine
+// reads it from stdin. Connections are read on their own threads, which only wait on the socket, while the searches
+// of every session share a fixed pool, so the server never runs more searches than it has workers for
+// A session gets its own game, engine and transposition table, and every move keeps to the session's own time
+// limits (INFO timeout_turn and time_left) capped by --max-turn, with any wait for a worker counted against it
+// The tables of all sessions share --memory MB, half of the heap by default, so a full server fits in the heap. A
+// session whose table still cannot be allocated is told ERROR and closed
+//
+// Usage: EngineServer [--port 4004] [--sessions 64] [--threads N] [--max-turn 10000] [--idle 600] [--memory MB]
+//                     [--book opening-book.bin]
+// Connections past --sessions are told "ERROR server busy" and closed, and a session idle for --idle seconds is closed
+public class EngineServer {
+    private final ServerSocket server;
+    private final ExecutorService searches;
+    private final ExecutorService connections;
+    private final Semaphore slots;
+    private final long maxTurnMillis;
+    private final int idleMillis;
+    // Transposition table of each session in MB, its share of the memory budget
+    private final int tableMB;
+    private final OpeningBook book;
+
+    EngineServer(ServerSocket server, int sessions, int threads, long maxTurnMillis, int idleMillis, long memoryMB,
+                 OpeningBook book) {
+        if (sessions < 1 || threads < 1) {
+            throw new IllegalArgumentException("Sessions and search threads should be at least 1");
+        }
+        if (memoryMB / sessions < 1) {
+            throw new IllegalArgumentException("Memory should give each of the " + sessions + " sessions at least 1 MB");
+        }
+        this.server = server;
+        this.searches = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "gomoku-server-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.connections = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "gomoku-server-session");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.slots = new Semaphore(sessions);
+        this.maxTurnMillis = maxTurnMillis;
+        this.idleMillis = idleMillis;
+        this.tableMB = (int) Math.min(GomokuGameAI.DEFAULT_TABLE_SIZE, memoryMB / sessions);
+        this.book = book;
+    }
+
+    // Accept connections until the server socket is closed
+    void serve() throws IOException {
+        try {
+            while (!server.isClosed()) {
+                Socket socket = server.accept();
+                if (!slots.tryAcquire()) {
+                    try (Socket busy = socket) {
+                        busy.getOutputStream().write("ERROR server busy\r\n".getBytes(StandardCharsets.US_ASCII));
+                    }
+                    catch (IOException e) {
+                        // The client is gone already
+                    }
+                    continue;
+                }
+                connections.execute(() -> {
+                    try {
+                        session(socket);
+                    }
+                    finally {
+                        slots.release();
+                    }
+                });
+            }
+        }
+        finally {
+            connections.shutdownNow();
+            searches.shutdownNow();
+        }
+    }
+
+    private void session(Socket socket) {
+        try (Socket client = socket) {
+            client.setSoTimeout(idleMillis);
+            client.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.US_ASCII));
+            PrintWriter out = new PrintWriter(client.getOutputStream(), false, StandardCharsets.US_ASCII);
+            PiskvorkEngine session = new PiskvorkEngine(in, out, searches, maxTurnMillis, 1);
+            session.setOpeningBook(book);
+            session.setMaxTableSize(tableMB);
+            session.run();
+        }
+        catch (SocketTimeoutException e) {
+            // Idle too long, the slot goes to someone else
+        }
+        catch (IOException e) {
+            // The client went away
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (RuntimeException e) {
+            System.err.println("Session with " + socket.getRemoteSocketAddress() + " failed: " + e);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 4004;
+        int sessions = 64;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long maxTurn = 10000;
+        int idleSeconds = 600;
+        long memory = Runtime.getRuntime().maxMemory() / 2 / (1024 * 1024);
+        OpeningBook book = null;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(value); break;
+                case "--sessions": sessions = Integer.parseInt(value); break;
+                case "--threads": threads = Integer.parseInt(value); break;
+                case "--max-turn": maxTurn = Long.parseLong(value); break;
+                case "--idle": idleSeconds = Integer.parseInt(value); break;
+                case "--memory": memory = Long.parseLong(value); break;
+                case "--book": book = Tournament.Player.loadBook(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        // Only local clients, it is not meant to face a network
+        ServerSocket socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        EngineServer engineServer = new EngineServer(socket, sessions, threads, maxTurn, idleSeconds * 1000, memory, book);
+        System.out.println("Serving the piskvork protocol on " + socket.getLocalSocketAddress() + " for up to " + sessions
+                + " sessions with " + threads + " search threads and " + engineServer.tableMB + " MB of table each");
+        engineServer.serve();
+    }
+}
@@ -0,0 +1,28 @@
+package gomoku_minimax;
+
+// What the tools need from a move-finding engine, so the alpha-beta GomokuGameAI and the MonteCarloEngine can be
+// played against each other under the same time budgets
+public interface GomokuEngine {
+    // Best move of the game's position for the player to move, as {x, y}, with the engine's own fixed budget
+    int[] findBestMove();
+
+    // Best move found before the wall-clock deadline (System.currentTimeMillis)
+    int[] findBestMoveBefore(long deadlineMillis);
+
+    // Search another game of the same board size from now on
+    void setGame(GomokuGame game);
+
+    // Searches in progress, and those started later, return their best move so far once the wall clock reaches
+    // stopMillis. Long.MAX_VALUE lifts the limit. Can be called from any thread
+    void setStopTime(long stopMillis);
+
+    default void stop() {
+        setStopTime(0);
+    }
+
+    // Nodes the last search visited, as the engine counts them
+    long getNodeCount();
+
+    // Stop the engine's search threads
+    void shutdown();
+}
@@ -1,67 +1,70 @@
 package gomoku_minimax;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class GomokuGame {
+    // Told about every move, after the board, the move count and the result are updated, redone moves included
+    public interface MoveListener {
+        void onMove(int x, int y, int player);
+
+        // Told about every undone move in the same way, after its stone is taken off the board
+        default void onUndo(int x, int y, int player) {}
+    }
+
     final int boardSize;
-    private int[][] board;
+    private Bitboard board;
     private int currentPlayer;
     private final int maxMoves;
     private int totalMoves;
     private boolean gameOver;
     private int winner;
+    // Cells x * size + y of the moves played, followed by the undone moves that can still be redone
+    // A move can only be played while the game goes on, so undoing one always leads back to a running game with its
+    // player to move, and its cell is all there is to save
+    private final int[] history;
+    private int redoMoves;
+    private final List<MoveListener> listeners = new ArrayList<>();
 
     // GomokuGame class variable constructor
     public GomokuGame(int boardSize) {
-        // Make sure size of board is in range of 5 to 20
-        if (boardSize < 5 || boardSize > 20) {
-            throw new IllegalArgumentException("Board size should be between 5 and 20");
+        // Make sure size of board is in range of 5 to the largest the bitboard holds
+        if (boardSize < 5 || boardSize > Bitboard.MAX_SIZE) {
+            throw new IllegalArgumentException("Board size should be between 5 and " + Bitboard.MAX_SIZE);
         }
         this.boardSize = boardSize;
-        this.board = new int[boardSize][boardSize];
+        this.board = new Bitboard(boardSize);
         this.currentPlayer = 1;
         this.maxMoves = boardSize * boardSize;
         this.totalMoves = 0;
         this.gameOver = false;
         this.winner = 0;
+        this.history = new int[maxMoves];
+        this.redoMoves = 0;
+    }
+
+    // Copy of another game, which can be searched on another thread while the original goes on
+    // Listeners are not copied
+    public GomokuGame(GomokuGame other) {
+        this.boardSize = other.boardSize;
+        this.board = other.board.copy();
+        this.currentPlayer = other.currentPlayer;
+        this.maxMoves = other.maxMoves;
+        this.totalMoves = other.totalMoves;
+        this.gameOver = other.gameOver;
+        this.winner = other.winner;
+        this.history = other.history.clone();
+        this.redoMoves = other.redoMoves;
     }
 
     // Check if win condition is satisfied
     // x is row, and y is column
-    public boolean checkWin(int x, int y, int[][] boardRef) {
-        // Array consisting of the 4 possible directions of the win conditions that each contains 2 opposite direction of the same slope
-        int[][][] directions = {{{0, 1}, {0, -1}}, {{1, 0}, {-1, 0}}, {{1, 1}, {-1, -1}}, {{1, -1}, {-1, 1}}};
-
-        // Iterate through 4 possible directions
-        for (int[][] direction : directions) {
-            // Count the current x & y position as one of the five condition to satisfy win condition
-            int count = 1;
-
-            // Iterate through 2 opposite directions
-            for (int[] opposites : direction) {
-                // Set the change of x & y position of the given direction
-                int dx = opposites[0];
-                int dy = opposites[1];
-
-                // Iterate through the x & y positions of the given direction
-                for (int i = 1; i < 5; i++) {
-                    int newX = x + i * dx;
-                    int newY = y + i * dy;
-
-                    if (!isValidPosition(newX, newY) || boardRef[newX][newY] != boardRef[x][y]) {
-                        break;
-                    }
-                    count++;
-
-                    // End the loop when five consecutive condition are detected
-                    if (count >= 5) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+    public boolean checkWin(int x, int y, Bitboard boardRef) {
+        return boardRef.checkWin(x, y);
     }
 
     // Decide whether it is allowed to place a circle on the clicked coordinate
+    // A new move drops the undone moves that could have been redone
     public boolean move(int x, int y) {
         // Do not respond to anything when the game is over
         if (gameOver) { return false;}
@@ -69,14 +72,59 @@ public class GomokuGame {
         // Check if the position is available inside the board or if the board is already occupied
         if (!isEmpty(x, y)) { return false;}
 
+        int player = currentPlayer;
+        play(x, y);
+        redoMoves = 0;
+        notifyMove(x, y, player);
+        return true;
+    }
+
+    // Take back the last move, false if there is none
+    public boolean undo() {
+        if (totalMoves == 0) {
+            return false;
+        }
+        int cell = history[--totalMoves];
+        int x = cell / boardSize;
+        int y = cell % boardSize;
+        int player = board.get(x, y);
+        board.set(x, y, 0);
+        currentPlayer = player;
+        gameOver = false;
+        winner = 0;
+        redoMoves++;
+        for (MoveListener listener : listeners) {
+            listener.onUndo(x, y, player);
+        }
+        return true;
+    }
+
+    // Play the last undone move again, false if there is none
+    public boolean redo() {
+        if (redoMoves == 0) {
+            return false;
+        }
+        int cell = history[totalMoves];
+        int x = cell / boardSize;
+        int y = cell % boardSize;
+        int player = currentPlayer;
+        play(x, y);
+        redoMoves--;
+        notifyMove(x, y, player);
+        return true;
+    }
+
+    // Place the current player's stone on the empty cell and update the result and the turn
+    private void play(int x, int y) {
         // Update the board
-        board[x][y] = currentPlayer;
+        board.set(x, y, currentPlayer);
+        history[totalMoves] = x * boardSize + y;
         totalMoves++;
 
         // Check if game is draw
         if (totalMoves == maxMoves) {
             gameOver = true;
-            return true;
+            return;
         }
 
         // Check if win condition satisfied
@@ -92,8 +140,20 @@ public class GomokuGame {
         else {
             currentPlayer = 1;
         }
+    }
 
-        return true;
+    public void addMoveListener(MoveListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeMoveListener(MoveListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyMove(int x, int y, int player) {
+        for (MoveListener listener : listeners) {
+            listener.onMove(x, y, player);
+        }
     }
 
     // Check if position is still in the scope of the board
@@ -101,16 +161,25 @@ public class GomokuGame {
         return x >= 0 && x < boardSize && y >= 0 && y < boardSize;
     }
     public boolean isEmpty(int x, int y) {
-        return (isValidPosition(x, y) && board[x][y] == 0);
+        return (isValidPosition(x, y) && board.isEmpty(x, y));
     }
 
     // Accessors
-    public int[][] getBoardCopy() {
-        int[][] boardCopy = new int[boardSize][boardSize];
-        for (int i = 0; i < boardSize; i++) {
-            System.arraycopy(this.board[i], 0, boardCopy[i], 0, boardSize);
+    public Bitboard getBoardCopy() {
+        return board.copy();
+    }
+
+    // The live board, which the search plays on and puts back as it found it, so nothing else may touch the game
+    // while a search runs
+    Bitboard getBoard() {return board;}
+
+    // Last move played as {x, y}, or null before the first
+    public int[] getLastMove() {
+        if (totalMoves == 0) {
+            return null;
         }
-        return boardCopy;
+        int cell = history[totalMoves - 1];
+        return new int[] {cell / boardSize, cell % boardSize};
     }
 
     public int getTotalMoves() {return totalMoves;}
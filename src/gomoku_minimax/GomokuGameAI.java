@@ -1,15 +1,21 @@
 package gomoku_minimax;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static java.lang.Math.abs;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 
-public class GomokuGameAI {
+public class GomokuGameAI implements GomokuEngine {
     public static class HeuristicCounter {
         int five = 0;
         int openFour = 0;
@@ -18,219 +24,377 @@ public class GomokuGameAI {
         int closedThree = 0;
         int openTwo = 0;
         int closedTwo = 0;
+
+        // Add the packed counts of a PatternTable lookup, sign is 1 to add or -1 to subtract
+        void add(long counts, int sign) {
+            five += sign * PatternTable.count(counts, PatternTable.FIVE);
+            openFour += sign * PatternTable.count(counts, PatternTable.OPEN_FOUR);
+            closedFour += sign * PatternTable.count(counts, PatternTable.CLOSED_FOUR);
+            openThree += sign * PatternTable.count(counts, PatternTable.OPEN_THREE);
+            closedThree += sign * PatternTable.count(counts, PatternTable.CLOSED_THREE);
+            openTwo += sign * PatternTable.count(counts, PatternTable.OPEN_TWO);
+            closedTwo += sign * PatternTable.count(counts, PatternTable.CLOSED_TWO);
+        }
+
+        void set(HeuristicCounter other) {
+            five = other.five;
+            openFour = other.openFour;
+            closedFour = other.closedFour;
+            openThree = other.openThree;
+            closedThree = other.closedThree;
+            openTwo = other.openTwo;
+            closedTwo = other.closedTwo;
+        }
     }
 
+    // Default memory budget of the transposition table in MB
+    public static final int DEFAULT_TABLE_SIZE = 16;
+    // Default budgets of the threat-space search that runs before every search
+    public static final int DEFAULT_THREAT_NODES = 20000;
+    public static final long DEFAULT_THREAT_TIME = 50;
+    // Longest threat sequences tried, in attacker moves
+    static final int VCF_DEPTH = 12;
+    private static final int VCT_DEPTH = 4;
+    // Mixed into the position hash when player 2 is the maximising player, as scores are stored from its perspective
+    private static final long MAX_PLAYER_KEY = 0x5DEECE66DL * 0x9E3779B97F4A7C15L;
+
     private final int maxDepth;
     GomokuGame game;
-    Map<Integer, HeuristicCounter> counters = new HashMap<>();
+    // Pattern counters and candidate moves of the position searched
+    final PatternEvaluator patterns;
+    final TranspositionTable table;
+    private SearchStats stats = new SearchStats();
+    private SearchStats.SearchListener listener;
+    // Depth of the iteration in progress, equal to maxDepth for fixed-depth searches
+    private int searchDepth;
+    private int completedDepth = 0;
+    private int bestScore = 0;
+    // Wall-clock deadline of the current iteration, 0 when unbounded
+    private long deadline = 0;
+    private boolean aborted = false;
+    // Wall-clock limit set from other threads to stop a search early, shared with the helpers
+    private final AtomicLong stopTime;
+    private int[] expectedReply;
+    private ThreatSolver threatSolver;
+    private int threatNodes = DEFAULT_THREAT_NODES;
+    private long threatMillis = DEFAULT_THREAT_TIME;
+    // Same position and settings, same tree: see setDeterministic
+    private boolean deterministic = false;
+    // Time generation, ordering and evaluation at every node: see setDetailedTiming
+    private boolean detailedTiming = false;
+    private OpeningBook book;
+
+    // Parallel root search, each helper owns its board and counters and shares the transposition table
+    private final GomokuGameAI[] helpers;
+    private final ExecutorService pool;
+    private Bitboard helperBoard;
+
+    // Two moves per ply that last caused a cutoff there, as cells x * boardSize + y, -1 when empty
+    private final int[][] killers;
+    // Per player and cell, how much the move has caused cutoffs, weighted by the square of the depth left
+    private final int[][] history;
+
+    // Principal variation search: every move after the first is only tested against the bound with a null window,
+    // and searched again with the full window when it turns out better
+    private boolean principalVariationSearch = true;
+    // Half width of the first window of each depth, around the score of the last depth searched by the same player
+    private static final int ASPIRATION_WINDOW = 2000;
+    // Triangular principal variation table of the iteration, row d holds the best line from depth d on
+    private int[][] pv = new int[1][1];
+    private int[] pvLength = new int[1];
+    // Fail-soft score of the last root search, and the principal variation behind it
+    private int rootScore;
+    private int[] rootPrincipalVariation = new int[0];
+    // Principal variation of the last completed depth, as cells x * boardSize + y
+    private int[] principalVariation = new int[0];
+
+    // Per-ply buffers of the search, indexed by depth: the moves of each node as cells x * size + y and the keys that
+    // order them, so no node allocates anything
+    private int[][] moveStack = new int[0][];
+    private long[][] keyStack = new long[0][];
+    // Pattern counters of both players before the move made at each ply, so taking it back restores them
+    private HeuristicCounter[][] savedCounters = new HeuristicCounter[0][];
+    // Scratch of makeMove
+    private final long[] placementCounts = new long[4];
+
+    // Session mode: the engine follows the game's moves and undos through a listener, so its counters and candidates
+    // are already up to date when a search starts instead of being rebuilt from the whole board
+    private GomokuGame.MoveListener session;
+    // Moves of the game the session state has seen
+    private int sessionMoves;
 
     public GomokuGameAI(GomokuGame game, int maxDepth) {
+        this(game, maxDepth, DEFAULT_TABLE_SIZE);
+    }
+
+    public GomokuGameAI(GomokuGame game, int maxDepth, int tableSizeMB) {
+        this(game, maxDepth, tableSizeMB, 1);
+    }
+
+    // threads is the number of search threads, use Runtime.getRuntime().availableProcessors() for every core
+    public GomokuGameAI(GomokuGame game, int maxDepth, int tableSizeMB, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of search threads should be at least 1");
+        }
         this.game = game;
         this.maxDepth = maxDepth;
-        this.counters.put(1, new HeuristicCounter());
-        this.counters.put(2, new HeuristicCounter());
+        this.table = new TranspositionTable(tableSizeMB);
+        this.stopTime = new AtomicLong(Long.MAX_VALUE);
+        updateThreatSolver();
+        this.patterns = new PatternEvaluator(game.boardSize);
+        this.killers = newKillers(game.boardSize);
+        this.history = new int[2][game.boardSize * game.boardSize];
+
+        if (threads > 1) {
+            this.helpers = new GomokuGameAI[threads];
+            for (int i = 0; i < threads; i++) {
+                helpers[i] = new GomokuGameAI(this);
+            }
+            this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "gomoku-search");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        else {
+            this.helpers = null;
+            this.pool = null;
+        }
     }
 
-    public void simulateMove(int[][] board, int x, int y, int player) {
-        updateBoardHeuristicsCount(board, x, y, 1, counters.get(1), true);
-        updateBoardHeuristicsCount(board, x, y, 2, counters.get(2), true);
-        board[x][y] = player;
-        updateBoardHeuristicsCount(board, x, y, 1, counters.get(1), false);
-        updateBoardHeuristicsCount(board, x, y, 2, counters.get(2), false);
+    // Helper of a parallel search sharing the parent's game and transposition table
+    private GomokuGameAI(GomokuGameAI parent) {
+        this.game = parent.game;
+        this.maxDepth = parent.maxDepth;
+        this.table = parent.table;
+        this.stopTime = parent.stopTime;
+        this.patterns = new PatternEvaluator(game.boardSize);
+        this.killers = newKillers(game.boardSize);
+        this.history = new int[2][game.boardSize * game.boardSize];
+        this.helpers = null;
+        this.pool = null;
     }
 
-    public void rebuildHeuristics() {
-        counters.put(1, new HeuristicCounter());
-        counters.put(2, new HeuristicCounter());
-        int[][] boardCopy = game.getBoardCopy();
-        int[][] tempBoard = new int[game.boardSize][game.boardSize];
-        for (int i = 0; i < game.boardSize; i++) {
-            for (int j = 0; j < game.boardSize; j++) {
-                if (boardCopy[i][j] != 0) {
-                    int player = boardCopy[i][j];
-                    simulateMove(tempBoard, i, j, player);
-                }
+    // Set the budgets of the threat-space search run before each search, a node budget of 0 turns it off
+    public void setThreatSearch(int nodeBudget, long timeBudgetMillis) {
+        threatNodes = nodeBudget;
+        threatMillis = timeBudgetMillis;
+        updateThreatSolver();
+    }
+
+    // Search the same tree for the same position and settings on any machine and any run, to compare node counts:
+    // the threat-space search stops on its node budget alone and a parallel engine searches the root on one thread
+    // A wall-clock limit, as findBestMoveBefore and setStopTime give, still ends the search wherever it is
+    public void setDeterministic(boolean deterministic) {
+        this.deterministic = deterministic;
+        updateThreatSolver();
+    }
+
+    public boolean isDeterministic() {return deterministic;}
+
+    private void updateThreatSolver() {
+        threatSolver = threatNodes > 0
+                ? new ThreatSolver(threatNodes, deterministic ? Long.MAX_VALUE : threatMillis, stopTime) : null;
+    }
+
+    // Fill the generation, ordering and evaluation times of the stats, which are left at 0 otherwise
+    // Reading the clock at every node costs about as much as evaluating a leaf, so this slows the search and the
+    // nodes per second it reports, and is only meant for profiling where the time goes
+    public void setDetailedTiming(boolean enabled) {
+        this.detailedTiming = enabled;
+        if (helpers != null) {
+            for (GomokuGameAI helper : helpers) {
+                helper.detailedTiming = enabled;
             }
         }
     }
 
-    public void updateBoardHeuristicsCount(int[][] board, int x, int y, int player, HeuristicCounter counter, boolean subtract) {
-        // Horizontal
-        checkLinePatterns(board[x], player, counter, subtract);
+    public boolean isDetailedTiming() {return detailedTiming;}
 
-        // Vertical
-        int[] column = new int[game.boardSize];
-        for (int i = 0; i < game.boardSize; i++) {
-            column[i] = board[i][y];
-        }
-        checkLinePatterns(column, player, counter, subtract);
-
-        // Diagonal down
-        int difference = abs(y - x);
-        if (difference <= 10) {
-            int diagonalLength = game.boardSize - difference;
-            int[] diagonalDown = new int[diagonalLength];
-            if (y >= x) {
-                for (int i = 0; i < diagonalLength; i++) {
-                    diagonalDown[i] = board[i][difference + i];
-                }
+    // Plain alpha-beta with the full window when off, to compare against
+    public void setPrincipalVariationSearch(boolean enabled) {
+        this.principalVariationSearch = enabled;
+        if (helpers != null) {
+            for (GomokuGameAI helper : helpers) {
+                helper.principalVariationSearch = enabled;
             }
-            else {
-                for (int i = 0; i < diagonalLength; i++) {
-                    diagonalDown[i] = board[difference + i][i];
-                }
+        }
+    }
+
+    // Answer from the opening book when it has the position, or null to always search
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    // Search another game of the same board size from now on, keeping the transposition table
+    // Not safe while a search is running, call it from the thread that searches
+    public void setGame(GomokuGame game) {
+        if (game.boardSize != this.game.boardSize) {
+            throw new IllegalArgumentException("Board size should stay " + this.game.boardSize);
+        }
+        boolean inSession = session != null;
+        endSession();
+        this.game = game;
+        if (helpers != null) {
+            for (GomokuGameAI helper : helpers) {
+                helper.game = game;
             }
-            checkLinePatterns(diagonalDown, player, counter, subtract);
         }
+        if (inSession) {
+            startSession();
+        }
+    }
 
-        // Diagonal Up
-        int sum = y + x;
-        if (sum + 1 >= 5 && 2 * game.boardSize - 1 - sum >= 5) {
-            if (sum >= game.boardSize) {
-                int diagonalLength = 2 * game.boardSize - 1 - sum;
-                int[] diagonalUp = new int[diagonalLength];
-                for (int i = 0; i < diagonalLength; i++) {
-                    diagonalUp[i] = board[game.boardSize - 1 - i][game.boardSize - diagonalLength + i];
-                }
-                checkLinePatterns(diagonalUp, player, counter, subtract);
+    // Follow the game move by move from now on, keeping the pattern counters, candidates and board between searches
+    // Moves must be played on the thread that searches, never while a search is running
+    public void startSession() {
+        if (session != null) {
+            return;
+        }
+        syncSession();
+        session = new GomokuGame.MoveListener() {
+            @Override
+            public void onMove(int x, int y, int player) {
+                followMove(x, y, player);
             }
-            else {
-                int diagonalLength = sum + 1;
-                int[] diagonalUp = new int[diagonalLength];
-                for (int i = 0; i < diagonalLength; i++) {
-                    diagonalUp[i] = board[diagonalLength - 1 - i][i];
-                }
-                checkLinePatterns(diagonalUp, player, counter, subtract);
+
+            @Override
+            public void onUndo(int x, int y, int player) {
+                followUndo(x, y, player);
             }
+        };
+        game.addMoveListener(session);
+    }
+
+    // Go back to rebuilding the state from the game before every search
+    public void endSession() {
+        if (session != null) {
+            game.removeMoveListener(session);
+            session = null;
         }
     }
 
-    // Not exact
-    public void checkLinePatterns(int[] line, int player, HeuristicCounter counter, boolean subtract) {
-        // Check for open four
-        if (line.length >= 6) {
-            for (int i = 0; i < line.length - 5; i++) {
-                int count = 0;
-                for (int j = i; j < i + 6; j++) {
-                    if (line[j] == player) {
-                        count++;
-                    }
-                }
-                if (count == 4 && (line[i] == 0 && line[i + 5] == 0)) {
-                    counter.openFour += subtract ? -1 : 1;
-                }
+    public boolean isInSession() {return session != null;}
+
+    // The game has already changed its board, so the cell is put back the way it was for simulateMove to see the change
+    private void followMove(int x, int y, int player) {
+        Bitboard board = game.getBoard();
+        board.set(x, y, 0);
+        simulateMove(board, x, y, player);
+        if (helpers != null) {
+            for (GomokuGameAI helper : helpers) {
+                helper.simulateMove(helper.helperBoard, x, y, player);
             }
         }
+        sessionMoves++;
+    }
 
-        // Check for other patterns
-        for (int i = 0; i < line.length - 4; i++) {
-            int countPlayer = 0;
-            int countEmpty = 0;
-            for (int j = i; j < i + 5; j++) {
-                if (line[j] == player) {
-                    countPlayer++;
-                } else if (line[j] == 0) {
-                    countEmpty++;
-                }
+    private void followUndo(int x, int y, int player) {
+        Bitboard board = game.getBoard();
+        board.set(x, y, player);
+        simulateMove(board, x, y, 0);
+        if (helpers != null) {
+            for (GomokuGameAI helper : helpers) {
+                helper.simulateMove(helper.helperBoard, x, y, 0);
             }
-            if ((countEmpty + countPlayer) == 5 && countPlayer >= 2) {
-                if (countPlayer == 5) {
-                    counter.five += subtract ? -1 : 1;
-                }
-                else if (countPlayer == 4) {
-                    counter.closedFour += subtract ? -1 : 1;
-                }
-                else if (countPlayer == 3) {
-                    if (line[i] == 0 && line[i + 4] == 0) {
-                        counter.openThree += subtract ? -1 : 1;
-                    }
-                    else {
-                        counter.closedThree += subtract ? -1 : 1;
-                    }
-                }
-                else if (countPlayer == 2) {
-                    if (line[i] + line[i + 3] + line[i + 4] == 0 || line[i] + line[i + 1] + line[i + 4] == 0) {
-                        counter.openTwo += subtract ? -1 : 1;
-                    }
-                    else {
-                        counter.closedTwo += subtract ? -1 : 1;
-                    }
-                }
+        }
+        sessionMoves--;
+    }
+
+    // Bring the session state to the game's position the slow way
+    private void syncSession() {
+        rebuildHeuristics();
+        sessionMoves = game.getTotalMoves();
+        if (helpers != null) {
+            for (GomokuGameAI helper : helpers) {
+                helper.rebuildHeuristics();
+                helper.helperBoard = game.getBoardCopy();
             }
         }
     }
 
-    public int calculateHeuristicsScore(int maxPlayer, int minPlayer, boolean maxTurn) {
-        HeuristicCounter maxCounter = counters.get(maxPlayer);
-        HeuristicCounter minCounter = counters.get(minPlayer);
+    // Searches in progress, and those started later, return their best move so far once the wall clock
+    // (System.currentTimeMillis) reaches stopMillis. Long.MAX_VALUE lifts the limit
+    // Unlike everything else here it can be called from any thread, which is how a running search is cancelled
+    // or given a deadline after it started
+    public void setStopTime(long stopMillis) {
+        stopTime.set(stopMillis);
+    }
+
+    public void stop() {
+        setStopTime(0);
+    }
 
-        if (maxCounter.five > 0) return 1000000;
-        if (minCounter.five > 0) return -1000000;
+    // Stop the search threads of a parallel engine
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
 
-        if (maxTurn && maxCounter.openFour > 0) return 500000;
-        if (!maxTurn && minCounter.openFour > 0) return -500000;
+    public void simulateMove(Bitboard board, int x, int y, int player) {
+        patterns.simulateMove(board, x, y, player);
+    }
 
-        int score = 0;
-        score += maxCounter.openFour * 50000;
-        score += minCounter.openFour * -50000;
+    // Play the player's stone on the empty cell inside the search, saving the counters of the ply so unmakeMove can put
+    // them back instead of counting the patterns again. One pass over the cell's lines gives both players' change
+    private void makeMove(Bitboard board, int x, int y, int player, int ply) {
+        HeuristicCounter black = patterns.counters.get(1);
+        HeuristicCounter white = patterns.counters.get(2);
+        HeuristicCounter[] saved = savedCounters[ply];
+        saved[0].set(black);
+        saved[1].set(white);
+        long[] counts = placementCounts;
+        PatternTable.countPlacement(board, x, y, player, counts);
+        black.add(counts[0], -1);
+        black.add(counts[1], 1);
+        white.add(counts[2], -1);
+        white.add(counts[3], 1);
+        board.set(x, y, player);
+        patterns.candidates.place(x, y);
+    }
 
-        score += maxCounter.closedFour * 10000;
-        score += minCounter.closedFour * -10000;
+    // Take back the move makeMove played at the ply
+    private void unmakeMove(Bitboard board, int x, int y, int ply) {
+        board.set(x, y, 0);
+        HeuristicCounter[] saved = savedCounters[ply];
+        patterns.counters.get(1).set(saved[0]);
+        patterns.counters.get(2).set(saved[1]);
+        patterns.candidates.remove(x, y);
+    }
 
-        score += maxCounter.openThree * 1000;
-        score += minCounter.openThree * -1000;
+    public void rebuildHeuristics() {
+        patterns.rebuild(game.getBoard());
+    }
 
-        score += maxCounter.closedThree * 300;
-        score += minCounter.closedThree * -300;
+    public void updateBoardHeuristicsCount(Bitboard board, int x, int y, int player, HeuristicCounter counter, boolean subtract) {
+        patterns.updateBoardHeuristicsCount(board, x, y, player, counter, subtract);
+    }
 
-        score += maxCounter.openTwo * 50;
-        score += minCounter.openTwo * -50;
+    public void checkLinePatterns(int[] line, int player, HeuristicCounter counter, boolean subtract) {
+        patterns.checkLinePatterns(line, player, counter, subtract);
+    }
 
-        return score;
+    public int calculateHeuristicsScore(int maxPlayer, int minPlayer, boolean maxTurn) {
+        return patterns.calculateHeuristicsScore(maxPlayer, minPlayer, maxTurn);
     }
 
-    public ArrayList<int[]> getActions(int[][] board) {
-        int[][] tempBoard = new int[game.boardSize][game.boardSize];
-        ArrayList<int[]> actions = new ArrayList<>();
-        int[][] directions = {{0, 1}, {0, -1}, {1, 0}, {-1, 0}, {1, 1}, {-1, -1}, {1, -1}, {-1, 1}};
-        for(int i = 0; i < game.boardSize; i++) {
-            for (int j = 0; j < game.boardSize; j++) {
-                // Empty cells around non-empty cells are considered as possible actions
-                if (board[i][j] != 0) {
-                    for (int[] direction : directions) {
-                        if (game.isValidPosition(i + direction[0], j + direction[1]) && board[i + direction[0]][j + direction[1]] == 0) {
-                            tempBoard[i + direction[0]][j + direction[1]] = 1;
-                        }
-                        // Up to 2 tiles on all 8 directions
-                        if (game.isValidPosition(i + 2 * direction[0], j + 2 * direction[1]) && board[i + 2 * direction[0]][j + 2 * direction[1]] == 0) {
-                            if (Math.random() < 0.5) {
-                                tempBoard[i + 2 * direction[0]][j + 2 * direction[1]] = 1;
-                            }
-                        }
-                    }
-                }
-            }
-        }
+    // Candidate moves of the position the counters describe, read from the incremental candidate set in row-major order
+    public ArrayList<int[]> getActions(Bitboard board) {
+        ArrayList<int[]> actions = new ArrayList<>(patterns.candidates.count());
         for (int i = 0; i < game.boardSize; i++) {
-            for (int j = 0; j < game.boardSize; j++) {
-                if (tempBoard[i][j] == 1) {
-                    actions.add(new int[] {i, j});
-                }
+            long row = patterns.candidates.row(i);
+            while (row != 0) {
+                actions.add(new int[] {i, Long.numberOfTrailingZeros(row)});
+                row &= row - 1;
             }
         }
         return actions;
     }
 
-    public ArrayList<int[]> sortActions(int[][] board, int maxPlayer, int minPlayer, boolean maxTurn, ArrayList<int[]> actions) {
+    public ArrayList<int[]> sortActions(Bitboard board, int maxPlayer, int minPlayer, boolean maxTurn, ArrayList<int[]> actions) {
         int n = actions.size();
-
-        int[] scores = new int[n];
-        for (int i = 0; i < n; i++) {
-            int[] action = actions.get(i);
-            simulateMove(board, action[0], action[1], maxPlayer);
-            scores[i] = calculateHeuristicsScore(maxPlayer, minPlayer, maxTurn);
-            simulateMove(board, action[0], action[1], 0);
-        }
+        int[] scores = scoreActions(board, maxPlayer, minPlayer, maxTurn, actions);
 
         Integer[] indices = new Integer[n];
         for (int i = 0; i < n; i++) {
@@ -246,77 +410,676 @@ public class GomokuGameAI {
         return sortedActions;
     }
 
-    public int minimax(int[][] board, int maxPlayer, int minPlayer, boolean maxTurn, int[] prevAction, int depth, int alpha, int beta) {
-        HeuristicCounter maxCounter = counters.get(maxPlayer);
-        HeuristicCounter minCounter = counters.get(minPlayer);
+    // Heuristic score after maxPlayer plays each action, the same as playing it with simulateMove and calling
+    // calculateHeuristicsScore, but worked out from the line masks: only the windows through the cell change, so each
+    // action costs one pass over its four lines and the board, counters and candidates are never touched
+    // The actions are still scored one at a time: candidates sharing a line each walk it again, there is no batched
+    // pass over the lines they share
+    public int[] scoreActions(Bitboard board, int maxPlayer, int minPlayer, boolean maxTurn, List<int[]> actions) {
+        int n = actions.size();
+        int[] scores = new int[n];
+        for (int i = 0; i < n; i++) {
+            int[] action = actions.get(i);
+            scores[i] = patterns.scoreMove(board, maxPlayer, minPlayer, maxTurn, action[0], action[1]);
+        }
+        return scores;
+    }
+
+    // Candidate cells x * size + y in row-major order, written to moves, returning how many there are
+    private int generateMoves(int[] moves) {
+        int count = 0;
+        for (int i = 0; i < game.boardSize; i++) {
+            long row = patterns.candidates.row(i);
+            while (row != 0) {
+                moves[count++] = i * game.boardSize + Long.numberOfTrailingZeros(row);
+                row &= row - 1;
+            }
+        }
+        return count;
+    }
+
+    // Sort the cells by the high halves of their keys, best first, where the low half of each key holds its cell so
+    // equal ranks keep the row-major order and the cells can be read back from the sorted keys
+    static void sortByRank(int[] moves, long[] keys, int count) {
+        Arrays.sort(keys, 0, count);
+        for (int i = 0; i < count; i++) {
+            moves[i] = Integer.MAX_VALUE - (int) keys[count - 1 - i];
+        }
+    }
+
+    private static int[][] newKillers(int boardSize) {
+        int[][] killers = new int[boardSize * boardSize + 1][2];
+        for (int[] slots : killers) {
+            Arrays.fill(slots, -1);
+        }
+        return killers;
+    }
+
+    // Staged ordering without scoring any move: the hash move, then the killers of the ply, then the rest by history
+    private void orderByHistory(int[] moves, long[] keys, int count, int player, int depth, int hashMove) {
+        int[] playerHistory = history[player - 1];
+        for (int i = 0; i < count; i++) {
+            int cell = moves[i];
+            int rank;
+            if (cell == hashMove) {
+                rank = Integer.MAX_VALUE;
+            }
+            else if (cell == killers[depth][0]) {
+                rank = Integer.MAX_VALUE - 1;
+            }
+            else if (cell == killers[depth][1]) {
+                rank = Integer.MAX_VALUE - 2;
+            }
+            else {
+                rank = playerHistory[cell];
+            }
+            keys[i] = ((long) rank << 32) | (Integer.MAX_VALUE - cell);
+        }
+        sortByRank(moves, keys, count);
+    }
+
+    // Remember a move that caused a cutoff, for the siblings of this node and for any position where it can be played
+    private void recordCutoff(int player, int depth, int cell) {
+        stats.cutoffs++;
+        if (killers[depth][0] != cell) {
+            killers[depth][1] = killers[depth][0];
+            killers[depth][0] = cell;
+        }
+        int remaining = searchDepth - depth;
+        history[player - 1][cell] += remaining * remaining;
+    }
+
+    // Keep what the last search learned, but let the next one outweigh it
+    private void ageOrdering() {
+        for (int[] slots : killers) {
+            Arrays.fill(slots, -1);
+        }
+        for (int[] playerHistory : history) {
+            for (int i = 0; i < playerHistory.length; i++) {
+                playerHistory[i] >>= 1;
+            }
+        }
+    }
 
-        boolean terminal = game.checkWin(prevAction[0], prevAction[1], board);
+    // prevMove is the cell x * size + y of the move that led here
+    public int minimax(Bitboard board, int maxPlayer, int minPlayer, boolean maxTurn, int prevMove, int depth, int alpha, int beta) {
+        stats.nodes++;
+
+        // Polling the clock costs little next to generating and ordering the actions of a node
+        // Once the deadline or the stop time has passed, unwind without storing anything
+        long limit = deadline != 0 ? min(deadline, stopTime.get()) : stopTime.get();
+        if (limit != Long.MAX_VALUE && System.currentTimeMillis() >= limit) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+        pvLength[depth] = depth;
+
+        boolean terminal = board.checkWin(prevMove / game.boardSize, prevMove % game.boardSize);
         if (terminal) {
             return !maxTurn ? 1000000 : -1000000;
         }
-        if (depth == maxDepth) {
-            return calculateHeuristicsScore(maxPlayer, minPlayer, maxTurn);
+        if (depth == searchDepth) {
+            stats.leafNodes++;
+            if (!detailedTiming) {
+                return calculateHeuristicsScore(maxPlayer, minPlayer, maxTurn);
+            }
+            long start = System.nanoTime();
+            int score = calculateHeuristicsScore(maxPlayer, minPlayer, maxTurn);
+            stats.evaluationNanos += System.nanoTime() - start;
+            return score;
+        }
+
+        // The bound stored for this node is decided against the window it was asked to search, before a stored bound
+        // narrows it below
+        int alphaOrigin = alpha;
+        int betaOrigin = beta;
+
+        // Reuse the stored result if it was searched at least as deep, otherwise only take its best move for ordering
+        long key = maxPlayer == 1 ? board.hash() : board.hash() ^ MAX_PLAYER_KEY;
+        long entry = table.probe(key);
+        int hashMove = -1;
+        if (entry != 0) {
+            hashMove = TranspositionTable.move(entry);
+            if (TranspositionTable.depth(entry) >= searchDepth - depth) {
+                int score = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT) {
+                    stats.tableCutoffs++;
+                    return score;
+                }
+                if (bound == TranspositionTable.LOWER) {
+                    alpha = max(alpha, score);
+                }
+                else {
+                    beta = min(beta, score);
+                }
+                if (alpha >= beta) {
+                    stats.tableCutoffs++;
+                    return score;
+                }
+            }
         }
+        int bestMove = -1;
+        int[] moves = moveStack[depth];
+        int count = orderedMoves(maxTurn ? maxPlayer : minPlayer, depth, hashMove);
 
         if (maxTurn) {
             int maxScore = -10000000;
-            ArrayList<int[]> actions = sortActions(board, maxPlayer, minPlayer, maxTurn, getActions(board));
-            for (int[] action : actions) {
-                simulateMove(board, action[0], action[1], maxPlayer);
-                maxScore = max(maxScore, minimax(board, maxPlayer, minPlayer, false, action, depth + 1, alpha, beta));
-                simulateMove(board, action[0], action[1], 0);
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                int x = move / game.boardSize;
+                int y = move % game.boardSize;
+                stats.movesSearched++;
+                makeMove(board, x, y, maxPlayer, depth);
+                int score = searchChild(board, maxPlayer, minPlayer, false, move, depth + 1, alpha, beta, bestMove < 0);
+                unmakeMove(board, x, y, depth);
+                if (aborted) {
+                    return 0;
+                }
+                if (score > maxScore) {
+                    maxScore = score;
+                    bestMove = move;
+                    if (score > alpha) {
+                        updatePrincipalVariation(depth, bestMove);
+                    }
+                }
 
                 // If I find anything larger or equal to the known smallest, I should stop as any larger value found will not be accepted by parent min
                 alpha = max(alpha, maxScore);
                 if (alpha >= beta) {
+                    recordCutoff(maxPlayer, depth, move);
                     break;
                 }
             }
+            storeResult(key, searchDepth - depth, maxScore, alphaOrigin, betaOrigin, bestMove);
             return maxScore;
         }
         else {
             int minScore = 10000000;
-            ArrayList<int[]> actions = sortActions(board, maxPlayer, minPlayer, false, getActions(board));
-            for (int[] action : actions) {
-                simulateMove(board, action[0], action[1], minPlayer);
-                minScore = min(minScore, minimax(board, maxPlayer, minPlayer, true, action, depth + 1, alpha, beta));
-                simulateMove(board, action[0], action[1], 0);
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                int x = move / game.boardSize;
+                int y = move % game.boardSize;
+                stats.movesSearched++;
+                makeMove(board, x, y, minPlayer, depth);
+                int score = searchChild(board, maxPlayer, minPlayer, true, move, depth + 1, alpha, beta, bestMove < 0);
+                unmakeMove(board, x, y, depth);
+                if (aborted) {
+                    return 0;
+                }
+                if (score < minScore) {
+                    minScore = score;
+                    bestMove = move;
+                    if (score < beta) {
+                        updatePrincipalVariation(depth, bestMove);
+                    }
+                }
 
                 // If I find anything smaller or equal to known largest, I should stop as any smaller value found will not be accepted by parent max
                 beta = min(beta, minScore);
                 if (beta <= alpha) {
+                    recordCutoff(minPlayer, depth, move);
                     break;
                 }
             }
+            storeResult(key, searchDepth - depth, minScore, alphaOrigin, betaOrigin, bestMove);
             return minScore;
         }
     }
 
+    // Search the position after a move with the full window if it is the first move of its node
+    // Later moves of a max node only have to show they do not beat alpha, and those of a min node that they do not
+    // go under beta, which a null window proves with far fewer nodes. A move that fails that test lies inside the
+    // window and is searched again with all of it
+    private int searchChild(Bitboard board, int maxPlayer, int minPlayer, boolean maxTurn, int move, int depth,
+                            int alpha, int beta, boolean first) {
+        if (first || !principalVariationSearch) {
+            return minimax(board, maxPlayer, minPlayer, maxTurn, move, depth, alpha, beta);
+        }
+        int score = !maxTurn
+                ? minimax(board, maxPlayer, minPlayer, false, move, depth, alpha, alpha + 1)
+                : minimax(board, maxPlayer, minPlayer, true, move, depth, beta - 1, beta);
+        if (score > alpha && score < beta && !aborted) {
+            stats.researches++;
+            score = minimax(board, maxPlayer, minPlayer, maxTurn, move, depth, alpha, beta);
+        }
+        return score;
+    }
+
+    // The line from depth on is the move followed by the line the child just returned
+    private void updatePrincipalVariation(int depth, int cell) {
+        pv[depth][depth] = cell;
+        int length = pvLength[depth + 1];
+        System.arraycopy(pv[depth + 1], depth + 1, pv[depth], depth + 1, length - depth - 1);
+        pvLength[depth] = length;
+    }
+
+    private void startIteration(int depth) {
+        searchDepth = depth;
+        pv = new int[depth + 1][depth + 1];
+        pvLength = new int[depth + 1];
+        if (moveStack.length < depth + 1) {
+            int cells = game.boardSize * game.boardSize;
+            int plies = moveStack.length;
+            moveStack = Arrays.copyOf(moveStack, depth + 1);
+            keyStack = Arrays.copyOf(keyStack, depth + 1);
+            savedCounters = Arrays.copyOf(savedCounters, depth + 1);
+            for (int ply = plies; ply <= depth; ply++) {
+                moveStack[ply] = new int[cells];
+                keyStack[ply] = new long[cells];
+                savedCounters[ply] = new HeuristicCounter[] {new HeuristicCounter(), new HeuristicCounter()};
+            }
+        }
+    }
+
+    // Generate and order the moves of an interior node into its ply of the move stack, timing both steps when
+    // detailed timing is on
+    // Only the root moves get the full heuristic sort: inside the tree, scoring every child cost more than the
+    // cutoffs it bought, and the staged ordering visits fewer nodes as well
+    private int orderedMoves(int player, int depth, int hashMove) {
+        stats.interiorNodes++;
+        if (!detailedTiming) {
+            int count = generateMoves(moveStack[depth]);
+            orderByHistory(moveStack[depth], keyStack[depth], count, player, depth, hashMove);
+            return count;
+        }
+        long start = System.nanoTime();
+        int[] moves = moveStack[depth];
+        int count = generateMoves(moves);
+        long generated = System.nanoTime();
+        orderByHistory(moves, keyStack[depth], count, player, depth, hashMove);
+        long ordered = System.nanoTime();
+        stats.generationNanos += generated - start;
+        stats.orderingNanos += ordered - generated;
+        return count;
+    }
+
+    // The score is exact only if it fell strictly inside the window it was searched with
+    private void storeResult(long key, int remainingDepth, int score, int alpha, int beta, int bestMove) {
+        int bound;
+        if (score <= alpha) {
+            bound = TranspositionTable.UPPER;
+        }
+        else if (score >= beta) {
+            bound = TranspositionTable.LOWER;
+        }
+        else {
+            bound = TranspositionTable.EXACT;
+        }
+        table.store(key, remainingDepth, bound, score, bestMove);
+    }
+
+    // Fixed-depth search to maxDepth
     public int[] findBestMove() {
-        rebuildHeuristics();
+        return findBestMove(maxDepth, maxDepth, 0);
+    }
+
+    // Deepen one ply at a time up to the depth with no time limit, so every depth leaves its record in the stats
+    public int[] findBestMoveToDepth(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Depth should be at least 1");
+        }
+        return findBestMove(1, depth, 0);
+    }
+
+    // Anytime search: deepen one ply at a time until the wall-clock deadline (System.currentTimeMillis) passes,
+    // and return the best move of the last depth that was searched to completion
+    public int[] findBestMoveBefore(long deadlineMillis) {
+        return findBestMove(1, game.boardSize * game.boardSize - game.getTotalMoves(), deadlineMillis);
+    }
+
+    // Search every depth from fromDepth to toDepth in turn, trying the best move of each completed depth first on the next
+    private int[] findBestMove(int fromDepth, int toDepth, long deadlineMillis) {
+        SearchStats.SearchEvent event = new SearchStats.SearchEvent();
+        event.begin();
+        stats = new SearchStats();
+        completedDepth = 0;
+        bestScore = 0;
+        aborted = false;
+        expectedReply = null;
+
+        // Known openings need no search at all
+        if (book != null) {
+            int[] bookMove = book.probe(game);
+            if (bookMove != null) {
+                principalVariation = new int[] {bookMove[0] * game.boardSize + bookMove[1]};
+                return finishSearch(event, bookMove);
+            }
+        }
+
+        // A forced win found by the threat-space search needs no full-width search
+        // Both solves keep to the deadline, VCF taking at most half of the time left and VCT what remains after it
+        if (threatSolver != null) {
+            // The solver searches a copy of its own
+            Bitboard position = game.getBoard();
+            long limit = deadlineMillis != 0 ? deadlineMillis : Long.MAX_VALUE;
+            long now = System.currentTimeMillis();
+            long vcfLimit = limit == Long.MAX_VALUE ? limit : now + Math.max(0, limit - now) / 2;
+            int[] threatMove = threatSolver.solveVCF(position, game.getCurrentPlayer(), VCF_DEPTH, vcfLimit);
+            stats.threatNodes += threatSolver.getNodeCount();
+            if (threatMove == null) {
+                threatMove = threatSolver.solveVCT(position, game.getCurrentPlayer(), VCT_DEPTH, limit);
+                stats.threatNodes += threatSolver.getNodeCount();
+            }
+            if (threatMove != null) {
+                bestScore = 1000000;
+                principalVariation = new int[] {threatMove[0] * game.boardSize + threatMove[1]};
+                return finishSearch(event, threatMove);
+            }
+        }
+
+        // The search plays on the game's own board and takes every move back, so nothing is copied
+        Bitboard board = game.getBoard();
+        if (session != null) {
+            if (sessionMoves != game.getTotalMoves()) {
+                syncSession();
+            }
+        }
+        else {
+            rebuildHeuristics();
+            // Helpers search on other threads, each on its own copy
+            if (helpers != null) {
+                for (GomokuGameAI helper : helpers) {
+                    helper.rebuildHeuristics();
+                    helper.helperBoard = game.getBoardCopy();
+                }
+            }
+        }
+        table.newSearch();
+        ageOrdering();
+        if (helpers != null) {
+            for (GomokuGameAI helper : helpers) {
+                helper.ageOrdering();
+            }
+        }
 
-        int[][] boardCopy = game.getBoardCopy();
         int currentPlayer = game.getCurrentPlayer();
         int nextPlayer = (currentPlayer == 1) ? 2 : 1;
 
-        int maxScore = -10000000;
-        int[] bestMove = new int[2];
+        // Root moves in heuristic order, best first, as cells x * size + y
+        int cells = game.boardSize * game.boardSize;
+        int[] moves = new int[cells];
+        long[] keys = new long[cells];
+        int count = generateMoves(moves);
+        for (int i = 0; i < count; i++) {
+            int score = patterns.scoreMove(board, currentPlayer, nextPlayer, true, moves[i] / game.boardSize, moves[i] % game.boardSize);
+            keys[i] = ((long) score << 32) | (Integer.MAX_VALUE - moves[i]);
+        }
+        sortByRank(moves, keys, count);
+        if (listener != null) {
+            int[] scores = new int[count];
+            for (int i = 0; i < count; i++) {
+                scores[i] = (int) (keys[count - 1 - i] >> 32);
+            }
+            listener.onRootMovesScored(moves, scores, count);
+        }
+        // Only a stop before the first depth completes leaves the best-ordered move as the answer
+        // Candidates only come from stones already played, so an empty board opens in the centre
+        int bestCell = count == 0 ? (game.boardSize / 2) * game.boardSize + game.boardSize / 2 : moves[0];
+        principalVariation = new int[0];
+        // Scores swing between the depths where either player has the last move, so each window is centred on the
+        // score of the depth before last
+        int[] depthScores = new int[toDepth + 1];
+        for (int depth = fromDepth; depth <= toDepth && count > 0; depth++) {
+            startIteration(depth);
+            // The first depth always completes so there is a move to return
+            deadline = depth > fromDepth ? deadlineMillis : 0;
+
+            SearchStats.DepthEvent depthEvent = new SearchStats.DepthEvent();
+            depthEvent.begin();
+            long start = System.nanoTime();
+            long nodesBefore = stats.nodes;
+            long cutoffsBefore = stats.cutoffs;
+            long orderingBefore = stats.orderingNanos;
+
+            int alpha = -10000000;
+            int beta = 10000000;
+            int guessDepth = depth - 2 >= fromDepth ? depth - 2 : depth - 1;
+            if (principalVariationSearch && guessDepth >= fromDepth && abs(depthScores[guessDepth]) < 1000000) {
+                alpha = depthScores[guessDepth] - ASPIRATION_WINDOW;
+                beta = depthScores[guessDepth] + ASPIRATION_WINDOW;
+            }
+
+            // A score on or outside the window is only a bound, so that side of the window opens fully and the depth
+            // is searched again
+            int iterationBest;
+            while (true) {
+                iterationBest = helpers != null && !deterministic
+                        ? searchRootParallel(currentPlayer, nextPlayer, moves, count, alpha, beta)
+                        : searchRoot(board, currentPlayer, nextPlayer, moves, count, alpha, beta);
+                if (helpers != null) {
+                    for (GomokuGameAI helper : helpers) {
+                        stats.add(helper.stats);
+                        helper.stats = new SearchStats();
+                    }
+                }
+                if (aborted) {
+                    break;
+                }
+                if (rootScore <= alpha && alpha > -10000000) {
+                    alpha = -10000000;
+                }
+                else if (rootScore >= beta && beta < 10000000) {
+                    beta = 10000000;
+                }
+                else {
+                    break;
+                }
+                stats.aspirationResearches++;
+            }
+            if (aborted) {
+                break;
+            }
+            bestCell = iterationBest;
+            bestScore = rootScore;
+            depthScores[depth] = rootScore;
+            principalVariation = rootPrincipalVariation;
+            completedDepth = depth;
+
+            SearchStats.Depth record = new SearchStats.Depth(depth, stats.nodes - nodesBefore, stats.cutoffs - cutoffsBefore,
+                    System.nanoTime() - start, bestScore, new int[] {bestCell / game.boardSize, bestCell % game.boardSize});
+            stats.depths.add(record);
+            depthEvent.depth = depth;
+            depthEvent.nodes = record.nodes;
+            depthEvent.cutoffs = record.cutoffs;
+            depthEvent.score = bestScore;
+            depthEvent.orderingNanos = stats.orderingNanos - orderingBefore;
+            depthEvent.commit();
+            if (listener != null) {
+                listener.onDepthCompleted(stats, record);
+            }
+
+            // The best move leads the next depth, the others keep their order
+            int index = 0;
+            while (moves[index] != iterationBest) {
+                index++;
+            }
+            System.arraycopy(moves, 0, moves, 1, index);
+            moves[0] = iterationBest;
+
+            // Nothing left to find once a forced win or loss is seen
+            if (abs(bestScore) >= 1000000) {
+                break;
+            }
+        }
+        deadline = 0;
+        int[] bestMove = {bestCell / game.boardSize, bestCell % game.boardSize};
+        if (principalVariation.length > 1) {
+            expectedReply = new int[] {principalVariation[1] / game.boardSize, principalVariation[1] % game.boardSize};
+        }
+        else if (completedDepth > 0) {
+            expectedReply = probeReply(board, currentPlayer, bestMove);
+        }
+        return finishSearch(event, bestMove);
+    }
 
-        int alpha = -10000000;
-        int beta = 10000000;
+    // Best reply to the move that the transposition table holds, or null
+    private int[] probeReply(Bitboard board, int player, int[] move) {
+        board.set(move[0], move[1], player);
+        long key = player == 1 ? board.hash() : board.hash() ^ MAX_PLAYER_KEY;
+        long entry = table.probe(key);
+        int reply = entry != 0 ? TranspositionTable.move(entry) : -1;
+        boolean playable = reply >= 0 && !board.checkWin(move[0], move[1])
+                && board.isEmpty(reply / game.boardSize, reply % game.boardSize);
+        board.set(move[0], move[1], 0);
+        return playable ? new int[] {reply / game.boardSize, reply % game.boardSize} : null;
+    }
 
-        ArrayList<int[]> actions = sortActions(boardCopy, currentPlayer, nextPlayer, true, getActions(boardCopy));
-        for (int[] action : actions) {
-            simulateMove(boardCopy, action[0], action[1], currentPlayer);
-            int newScore = minimax(boardCopy, currentPlayer, nextPlayer, false, action,1, alpha, beta);
+    private int[] finishSearch(SearchStats.SearchEvent event, int[] bestMove) {
+        stats.elapsedNanos = System.nanoTime() - stats.startNanos;
+        event.completedDepth = completedDepth;
+        event.nodes = stats.nodes;
+        event.cutoffs = stats.cutoffs;
+        event.threatNodes = stats.threatNodes;
+        event.score = bestScore;
+        event.move = bestMove[0] + "," + bestMove[1];
+        event.commit();
+        if (listener != null) {
+            listener.onSearchCompleted(stats);
+        }
+        return bestMove;
+    }
+
+    // Search the first count root moves, returning the best one
+    private int searchRoot(Bitboard board, int currentPlayer, int nextPlayer, int[] moves, int count, int alpha, int beta) {
+        int maxScore = -10000000;
+        int bestMove = moves[0];
+        pvLength[0] = 0;
+
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int x = move / game.boardSize;
+            int y = move % game.boardSize;
+            makeMove(board, x, y, currentPlayer, 0);
+            int newScore = searchChild(board, currentPlayer, nextPlayer, false, move, 1, alpha, beta, i == 0);
+            unmakeMove(board, x, y, 0);
+            if (aborted) {
+                break;
+            }
             if (maxScore < newScore) {
                 maxScore = newScore;
-                bestMove = new int[]{action[0], action[1]};
+                bestMove = move;
+                if (newScore > alpha) {
+                    updatePrincipalVariation(0, move);
+                }
             }
-            simulateMove(boardCopy, action[0], action[1], 0);
 
             alpha = max(alpha, maxScore);
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        if (!aborted) {
+            rootScore = maxScore;
+            rootPrincipalVariation = Arrays.copyOf(pv[0], pvLength[0]);
         }
         return bestMove;
     }
+
+    // Split the root actions between the helpers as they become free
+    // Every finished action raises the shared alpha, so later actions on all threads are searched with the tightest bound
+    private int searchRootParallel(int currentPlayer, int nextPlayer, int[] moves, int count, int alpha, int beta) {
+        AtomicInteger nextAction = new AtomicInteger(0);
+        AtomicInteger sharedAlpha = new AtomicInteger(alpha);
+        // Each action is searched by one helper, which leaves its principal variation here when it beats alpha
+        int[][] actionLines = new int[count][];
+        // Best score packed with its action index, ties go to the earlier action as in the serial search
+        AtomicLong best = new AtomicLong(Long.MIN_VALUE);
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (GomokuGameAI helper : helpers) {
+            helper.startIteration(searchDepth);
+            helper.deadline = deadline;
+            helper.aborted = false;
+            tasks.add(() -> {
+                helper.searchRootActions(currentPlayer, nextPlayer, moves, count, beta, nextAction, sharedAlpha, best, actionLines);
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            aborted = true;
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Search thread failed", e.getCause());
+        }
+
+        for (GomokuGameAI helper : helpers) {
+            aborted |= helper.aborted;
+        }
+        if (aborted) {
+            return moves[0];
+        }
+        // No action beat alpha, which is all a fail low needs to know
+        if (best.get() == Long.MIN_VALUE) {
+            rootScore = alpha;
+            rootPrincipalVariation = new int[0];
+            return moves[0];
+        }
+        int bestIndex = Integer.MAX_VALUE - (int) best.get();
+        rootScore = (int) (best.get() >> 32);
+        rootPrincipalVariation = actionLines[bestIndex];
+        return moves[bestIndex];
+    }
+
+    // Once an action reaches beta the depth has failed high, and the actions not started yet are left alone
+    private void searchRootActions(int currentPlayer, int nextPlayer, int[] moves, int count, int beta,
+                                   AtomicInteger nextAction, AtomicInteger sharedAlpha, AtomicLong best, int[][] actionLines) {
+        int index;
+        while (sharedAlpha.get() < beta && (index = nextAction.getAndIncrement()) < count) {
+            int move = moves[index];
+            int x = move / game.boardSize;
+            int y = move % game.boardSize;
+            int alpha = sharedAlpha.get();
+            makeMove(helperBoard, x, y, currentPlayer, 0);
+            // Until some action has set a real alpha, a null window around it proves nothing
+            boolean first = index == 0 || alpha == -10000000;
+            int score = searchChild(helperBoard, currentPlayer, nextPlayer, false, move, 1, alpha, beta, first);
+            unmakeMove(helperBoard, x, y, 0);
+            if (aborted) {
+                return;
+            }
+
+            // A score at or below the alpha it was searched with is only an upper bound, and cannot beat the best
+            if (score > alpha) {
+                updatePrincipalVariation(0, move);
+                actionLines[index] = Arrays.copyOf(pv[0], pvLength[0]);
+                long packed = ((long) score << 32) | (Integer.MAX_VALUE - index);
+                best.accumulateAndGet(packed, Math::max);
+                sharedAlpha.accumulateAndGet(score, Math::max);
+            }
+        }
+    }
+
+    // Number of minimax nodes visited by the last findBestMove call
+    public long getNodeCount() {return stats.nodes;}
+    // Counters and timings of the last findBestMove call
+    public SearchStats getLastSearchStats() {return stats;}
+
+    // Listen to depth and search completion, or null to stop listening
+    public void setSearchListener(SearchStats.SearchListener listener) {
+        this.listener = listener;
+    }
+    // Principal variation of the deepest completed depth of the last findBestMove call as {x, y} moves, starting
+    // with the move it returned and alternating between the players
+    public List<int[]> getPrincipalVariation() {
+        List<int[]> line = new ArrayList<>();
+        for (int cell : principalVariation) {
+            line.add(new int[] {cell / game.boardSize, cell % game.boardSize});
+        }
+        return line;
+    }
+    // Reply the last findBestMove call expects to its move, from the transposition table, or null if unknown
+    public int[] getExpectedReply() {return expectedReply == null ? null : expectedReply.clone();}
+    // Deepest depth the last findBestMove call searched to completion, and the score it found there
+    public int getCompletedDepth() {return completedDepth;}
+    public int getBestScore() {return bestScore;}
 }
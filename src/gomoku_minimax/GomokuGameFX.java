@@ -1,54 +1,94 @@
 package gomoku_minimax;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.layout.ColumnConstraints;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.StackPane;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Circle;
+import javafx.scene.layout.VBox;
 import javafx.scene.text.Font;
 import javafx.scene.text.TextAlignment;
 import javafx.stage.Stage;
 
 public class GomokuGameFX extends Application {
-    private static final int boxSize = 40;
-    private static final int boardSize = 16;
-    private static final int boardLength = 16 * 40;
-
+    // Board size unless one is given with --size=N, and the width of the board area, which larger boards share
+    private static final int defaultBoardSize = 15;
+    private static final int boardLength = 640;
+
+    // Depth the AI searches each move to, unless a time per move is given with --think=MILLISECONDS
+    private static final int aiDepth = 3;
+    // Longest the AI ponders on the human's turn when it searches on time
+    private static final long ponderTime = 30000;
+    // Time to guess the human's reply when the last search did not leave one
+    private static final long guessTime = 100;
+
+    // Opening book used by the AI when the file is next to the game
+    private static final Path bookPath = Paths.get("opening-book.bin");
+
+    private int boardSize;
+    // Time given to each AI move, 0 to search to aiDepth so the AI plays the same on any machine
+    private long thinkTime;
     private GomokuGame game;
     private GomokuGameAI agent;
-
-    // For readability
-    private static StackPane createBlock() {
-        StackPane block = new StackPane();
-        block.setPrefSize(boxSize, boxSize);
-        block.setStyle("-fx-background-color: #FFF2D7;" + "-fx-border-color: black;" + "-fx-border-width: 1.5;");
-        return block;
+    private OpeningBook book;
+
+    // Searches run one at a time on this thread, each on its own copy of the game, so the window never waits for them
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "gomoku-ui-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Search for the AI move, null when the AI is not thinking
+    private Search thinking;
+    // Search of the position after the human's expected reply, started after every AI move
+    private Search ponder;
+    // What the search thread is doing, shown with the progress of each depth
+    private volatile String activity = "";
+
+    // A search submitted to the search thread
+    private static class Search {
+        // Copy of the game, only touched by the search thread once submitted
+        final GomokuGame position;
+        // Number of moves on the board when the game reaches the searched position
+        final int totalMoves;
+        volatile long startMillis;
+        volatile int[] expectedReply;
+        volatile boolean cancelled = false;
+        CompletableFuture<int[]> result;
+
+        Search(GomokuGame position, int totalMoves) {
+            this.position = position;
+            this.totalMoves = totalMoves;
+        }
     }
 
+    // For readability
     private static StackPane createSection() {
         StackPane section = new StackPane();
         section.setPrefSize(200, 106);
         return section;
     }
 
-    public void applyMove(Circle[][] circles, int row, int column, int currentPlayer,
+    public void applyMove(BoardCanvas board, int row, int column, int currentPlayer,
                           Label gameWinner, Label gameRound, Label gameCurrentPlayer) {
-        circles[row][column].setVisible(true);
-
-        // Set colors to players
-        if (currentPlayer == 1) {
-            circles[row][column].setFill(Color.BLACK);
-            circles[row][column].setStroke(Color.WHITE);
-        }
-        else if (currentPlayer == 2) {
-            circles[row][column].setStroke(Color.BLACK);
-            circles[row][column].setFill(Color.WHITE);
-        }
+        board.setStone(row, column, currentPlayer);
+        // The scores were for the position before the move
+        board.clearScores();
 
         if (game.isGameOver()) {
             if (game.getWinner() == 0) {
@@ -66,72 +106,107 @@ public class GomokuGameFX extends Application {
         }
     }
 
+    // Swap the "AI Move" button for the cancel button and show the progress while the AI thinks
+    private static void showThinking(boolean thinking, Button AIMove, Button cancel, ProgressIndicator progress) {
+        AIMove.setVisible(!thinking);
+        cancel.setVisible(thinking);
+        progress.setVisible(thinking);
+    }
+
+    // Search thread: find the AI move in the search position
+    private int[] think(GomokuGameAI engine, Search search) {
+        // Lift the stop of the previous search, a cancel from now on is seen either here or by the search
+        engine.setStopTime(Long.MAX_VALUE);
+        if (search.cancelled) {
+            return null;
+        }
+        activity = "Thinking";
+        search.startMillis = System.currentTimeMillis();
+        engine.setGame(search.position);
+        return thinkTime > 0 ? engine.findBestMoveBefore(search.startMillis + thinkTime) : engine.findBestMove();
+    }
+
+    // Search thread: play the human's expected reply in the search position and search the AI move after it, so the
+    // transposition table is already filled if the guess was right. On time the search goes on until the human moves,
+    // at a fixed depth it is the same search the AI move would run
+    private int[] ponder(GomokuGameAI engine, Search search) {
+        engine.setStopTime(Long.MAX_VALUE);
+        if (search.cancelled) {
+            return null;
+        }
+        // The last search was for the AI move just played, and usually knows the reply to it
+        int[] reply = engine.getExpectedReply();
+        if (reply == null) {
+            activity = "Guessing your move";
+            engine.setGame(search.position);
+            reply = engine.findBestMoveBefore(System.currentTimeMillis() + guessTime);
+        }
+        if (search.cancelled || !search.position.move(reply[0], reply[1])) {
+            return null;
+        }
+        activity = "Pondering";
+        search.startMillis = System.currentTimeMillis();
+        search.expectedReply = reply;
+        engine.setGame(search.position);
+        return thinkTime > 0 ? engine.findBestMoveBefore(search.startMillis + ponderTime) : engine.findBestMove();
+    }
+
+    // Drop a search, whether it is waiting for the search thread or running on it
+    private void cancel(Search search) {
+        search.cancelled = true;
+        agent.stop();
+    }
+
     @Override
     public void start(Stage stage) {
+        if (Files.exists(bookPath)) {
+            try {
+                book = OpeningBook.load(bookPath);
+            }
+            catch (IOException | IllegalArgumentException e) {
+                System.out.println("Could not load the opening book: " + e.getMessage());
+            }
+        }
+
+        // e.g. gradle run --args="--size=19"
+        String size = getParameters().getNamed().get("size");
+        boardSize = size != null ? Integer.parseInt(size) : defaultBoardSize;
+        if (boardSize < 5 || boardSize > Bitboard.MAX_SIZE) {
+            throw new IllegalArgumentException("Board size should be between 5 and " + Bitboard.MAX_SIZE);
+        }
+        // e.g. gradle run --args="--think=1000" for a search of one second per move instead of a fixed depth
+        String think = getParameters().getNamed().get("think");
+        thinkTime = think != null ? Long.parseLong(think) : 0;
+        if (thinkTime < 0) {
+            throw new IllegalArgumentException("Think time should be at least 0");
+        }
+
         // The main grid divided into left (large one for the game grid) and right (smaller one for labels & buttons)
         GridPane containerGrid = new GridPane();
-        containerGrid.getColumnConstraints().add(new ColumnConstraints(640));
+        containerGrid.getColumnConstraints().add(new ColumnConstraints(boardLength));
         containerGrid.getColumnConstraints().add(new ColumnConstraints(200));
 
-        // Create two grids for the game and for the labels & buttons
-        StackPane gameGrid = new StackPane();
+        // Create the board and the grid for the labels & buttons
+        // Lines are a whole number of pixels apart, so a larger board gets closer lines within the same width
+        BoardCanvas board = new BoardCanvas(boardSize, boardLength / (boardSize + 1));
         GridPane labelsButtonsGrid = new GridPane();
 
-        // Make the outer and inner border width of the game grid similar
-        gameGrid.setStyle("-fx-border-width: 1.5;" + "-fx-border-color: black;");
-
-        // Add the game grid and label & buttons grid into the container grid
-        containerGrid.add(gameGrid, 0, 0);
+        // Add the board and label & buttons grid into the container grid
+        containerGrid.add(board, 0, 0);
         containerGrid.add(labelsButtonsGrid, 1, 0);
 
-        // Game grid setup
-        // -------------------------------------------------------------------------------------------------------------
-        // Create two types of grid for block grid and circle grid
-        GridPane blockGrid = new GridPane();
-        GridPane circleGrid = new GridPane();
-
-        // Create a circle 2D array to store and control the circles
-        Circle[][] circles = new Circle[boardSize - 1][boardSize - 1];
-
-        // Fill the block and circle grids
-        for (int i = 0; i < boardSize; i++) {
-            for (int j = 0; j < boardSize; j++) {
-                // Fill the block grids
-                StackPane block = createBlock();
-                blockGrid.add(block, j, i);
-
-                // Fill the circle grids and assign the circles into the "circles" array
-                if (i > 0 && j > 0) {
-                    StackPane invisibleBlock = new StackPane();
-                    invisibleBlock.setPrefSize(boxSize, boxSize);
-                    Circle circle = new Circle(0.4 * boxSize);
-
-                    // All circles are initially invisible
-                    circle.setVisible(false);
-                    invisibleBlock.getChildren().add(circle);
-                    circles[i - 1][j - 1] = circle;
-                    circleGrid.add(invisibleBlock, j - 1, i - 1);
-                }
-            }
-        }
-
-        // Place block and circle grids into the game grid
-        gameGrid.getChildren().add(blockGrid);
-        gameGrid.getChildren().add(circleGrid);
-
-        // Translate the circle grid to position the circles be on the blocks' intersections
-        circleGrid.setTranslateX(17);
-        circleGrid.setTranslateY(17);
-        // -------------------------------------------------------------------------------------------------------------
-
         // Labels & buttons grid setup
         // -------------------------------------------------------------------------------------------------------------
         // Labels & buttons variables
-        Label gameBoardSize = new Label("Board Size : " + (boardSize - 1) + " x " + (boardSize - 1));
+        Label gameBoardSize = new Label("Board Size : " + boardSize + " x " + boardSize);
         Label gameCurrentPlayer = new Label();
         Label gameRound = new Label("");
         Label gameWinner = new Label();
         Button AIMove = new Button("AI Move");
+        Button cancel = new Button("Cancel");
+        ProgressIndicator progress = new ProgressIndicator();
+        Label searchStatus = new Label();
+        CheckBox showScores = new CheckBox("Show AI scores");
         Button startNewGame = new Button("Start a New Game");
         Button exit = new Button("Exit");
 
@@ -142,6 +217,7 @@ public class GomokuGameFX extends Application {
         gameCurrentPlayer.setFont(font);
         gameWinner.setFont(font);
         AIMove.setFont(font);
+        cancel.setFont(font);
         startNewGame.setFont(font);
         exit.setFont(font);
 
@@ -153,6 +229,10 @@ public class GomokuGameFX extends Application {
 
         AIMove.setDisable(true);
         AIMove.setVisible(false);
+        cancel.setVisible(false);
+        progress.setPrefSize(16, 16);
+        progress.setVisible(false);
+        searchStatus.setGraphic(progress);
 
         // Place the labels & buttons into a stack pane for clean layout
         StackPane[] sections = new StackPane[7];
@@ -163,7 +243,10 @@ public class GomokuGameFX extends Application {
         sections[1].getChildren().add(gameCurrentPlayer);
         sections[2].getChildren().add(gameRound);
         sections[3].getChildren().add(gameWinner);
-        sections[4].getChildren().add(AIMove);
+        showScores.setOnAction(e -> board.setOverlay(showScores.isSelected()));
+        VBox AISection = new VBox(8, new StackPane(AIMove, cancel), searchStatus, showScores);
+        AISection.setAlignment(Pos.CENTER);
+        sections[4].getChildren().add(AISection);
         sections[5].getChildren().add(startNewGame);
         sections[6].getChildren().add(exit);
 
@@ -174,8 +257,41 @@ public class GomokuGameFX extends Application {
         // -------------------------------------------------------------------------------------------------------------
 
         startNewGame.setOnAction(event -> {
-            game = new GomokuGame(boardSize - 1);
-            agent = new GomokuGameAI(game, 3);
+            if (thinking != null) {
+                cancel(thinking);
+                thinking = null;
+            }
+            if (ponder != null) {
+                cancel(ponder);
+                ponder = null;
+            }
+            showThinking(false, AIMove, cancel, progress);
+            searchStatus.setText("");
+
+            game = new GomokuGame(boardSize);
+            GomokuGameAI engine = new GomokuGameAI(game, aiDepth);
+            engine.setOpeningBook(book);
+            // Called on the search thread after every completed depth
+            engine.setSearchListener(new SearchStats.SearchListener() {
+                // Only the search for the AI move is on the position shown, pondering looks a move ahead
+                @Override
+                public void onRootMovesScored(int[] cells, int[] scores, int count) {
+                    if (agent == engine && activity.equals("Thinking")) {
+                        board.showScores(cells, scores, count);
+                    }
+                }
+
+                @Override
+                public void onDepthCompleted(SearchStats stats, SearchStats.Depth depth) {
+                    String text = activity + ": depth " + depth.getDepth() + ", " + stats.getNodes() + " nodes";
+                    Platform.runLater(() -> {
+                        if (agent == engine) {
+                            searchStatus.setText(text);
+                        }
+                    });
+                }
+            });
+            agent = engine;
 
             gameRound.setText("Round : 1");
             gameCurrentPlayer.setText("Player " + game.getCurrentPlayer() + "'s " + "turn");
@@ -183,27 +299,41 @@ public class GomokuGameFX extends Application {
             AIMove.setDisable(false);
             AIMove.setVisible(true);
 
-            for (int i = 0; i < boardSize - 1; i++) {
-                for (int j = 0; j < boardSize - 1; j++) {
-                    circles[i][j].setVisible(false);
-                }
-            }
+            board.clear();
 
-            circleGrid.setOnMouseClicked(e -> {
-                // Get the StackPane position of the clicked coordinates
-                int column = (int) (e.getX() / boxSize);
-                int row = (int) (e.getY() / boxSize);
+            // Search the position after the human's expected reply while the human thinks
+            Runnable startPonder = () -> {
+                if (!game.isGameOver()) {
+                    Search search = new Search(new GomokuGame(game), game.getTotalMoves() + 1);
+                    search.result = CompletableFuture.supplyAsync(() -> ponder(engine, search), searchThread);
+                    ponder = search;
+                }
+            };
 
-                // Find the distance of the clicked coordinates from the center of a corresponding circle in the StackPane
-                double xc = (e.getX() % boxSize) - ((double) boxSize / 2);
-                double yc = (e.getY() % boxSize) - ((double) boxSize / 2);
+            board.setOnMouseClicked(e -> {
+                // The board is locked while the AI thinks about its move
+                if (thinking != null) {
+                    return;
+                }
 
-                // Move only if the clicked coordinates corresponds to the circle region in the StackPane
-                if (xc * xc + yc * yc <= 0.16 * boxSize * boxSize && (row < 15 && column < 15)) {
+                // Move only if the clicked coordinates are within the stone area of an intersection
+                int[] cell = board.cellAt(e.getX(), e.getY());
+                if (cell != null) {
+                    int row = cell[0];
+                    int column = cell[1];
                     // Store the game's current player as it will change after move is called
                     int currentPlayer = game.getCurrentPlayer();
                     if (game.move(row, column)) {
-                        applyMove(circles, row, column, currentPlayer, gameWinner, gameRound, gameCurrentPlayer);
+                        applyMove(board, row, column, currentPlayer, gameWinner, gameRound, gameCurrentPlayer);
+
+                        // Pondering goes on only if this was the reply it expected and the game goes on
+                        if (ponder != null) {
+                            int[] reply = ponder.expectedReply;
+                            if (reply == null || reply[0] != row || reply[1] != column || game.isGameOver()) {
+                                cancel(ponder);
+                                ponder = null;
+                            }
+                        }
                     }
                 }
                 else {
@@ -212,10 +342,56 @@ public class GomokuGameFX extends Application {
             });
 
             AIMove.setOnMouseClicked(e -> {
-                int[] bestMove = agent.findBestMove();
-                int currentPlayer = game.getCurrentPlayer();
-                if (game.move(bestMove[0], bestMove[1])) {
-                    applyMove(circles, bestMove[0], bestMove[1], currentPlayer, gameWinner, gameRound, gameCurrentPlayer);
+                if (thinking != null || game.isGameOver()) {
+                    return;
+                }
+                Search search;
+                if (ponder != null && game.getTotalMoves() == ponder.totalMoves) {
+                    // The pondering search is already on this position, on time it only gets what is left of the think
+                    // time, at a fixed depth it is left to finish
+                    search = ponder;
+                    if (thinkTime > 0) {
+                        engine.setStopTime(search.startMillis + thinkTime);
+                    }
+                }
+                else {
+                    if (ponder != null) {
+                        cancel(ponder);
+                    }
+                    search = new Search(new GomokuGame(game), game.getTotalMoves());
+                    search.result = CompletableFuture.supplyAsync(() -> think(engine, search), searchThread);
+                }
+                ponder = null;
+                thinking = search;
+                showThinking(true, AIMove, cancel, progress);
+
+                search.result.whenComplete((bestMove, error) -> Platform.runLater(() -> {
+                    // Nothing to do for a search that was cancelled or belongs to an older game
+                    if (thinking != search) {
+                        return;
+                    }
+                    thinking = null;
+                    showThinking(false, AIMove, cancel, progress);
+                    if (error != null) {
+                        searchStatus.setText("The AI search failed");
+                        error.printStackTrace();
+                        return;
+                    }
+
+                    int currentPlayer = game.getCurrentPlayer();
+                    if (game.move(bestMove[0], bestMove[1])) {
+                        applyMove(board, bestMove[0], bestMove[1], currentPlayer, gameWinner, gameRound, gameCurrentPlayer);
+                        startPonder.run();
+                    }
+                }));
+            });
+
+            cancel.setOnAction(e -> {
+                if (thinking != null) {
+                    cancel(thinking);
+                    thinking = null;
+                    showThinking(false, AIMove, cancel, progress);
+                    searchStatus.setText("Search cancelled");
                 }
             });
         });
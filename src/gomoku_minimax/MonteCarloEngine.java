@@ -0,0 +1,456 @@
+package gomoku_minimax;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Monte Carlo tree search, an alternative to the alpha-beta GomokuGameAI behind the same GomokuEngine interface
+// Every thread walks the one shared tree with UCT, plays the moves on its own board and scores the leaf with the
+// pattern counters of calculateHeuristicsScore instead of a random rollout, then adds the result to the nodes of
+// its path. A thread counts its visit on the way down before it knows the result, a virtual loss that steers the
+// other threads to other branches until the result arrives, and every update is a single atomic add, so no lock
+// is ever taken
+// The tree lives in primitive arrays indexed by node, allocated once per engine: the children of a node are
+// contiguous and sorted best first by the same heuristic as the root moves of GomokuGameAI, and a node only looks
+// at as many of them as the square root of its visits allows, so weak moves are only tried once the good ones
+// have been
+//
+// Usage: MonteCarloEngine [--size 15] [--time 2000] [--threads 1,2,4,N] [--tree 64]
+// measures playouts per second on the positions of search-regression.txt for each thread count
+public class MonteCarloEngine implements GomokuEngine {
+    // Playouts of findBestMove, and the default memory budget of the tree in MB
+    public static final int DEFAULT_PLAYOUTS = 20000;
+    public static final int DEFAULT_TREE_SIZE = 64;
+    // Bytes of the arrays per node
+    private static final int NODE_BYTES = 28;
+    // Visits a thread counts on the way down, taken back but one when its result is added
+    private static final int VIRTUAL_LOSS = 3;
+    private static final double EXPLORATION = 0.7;
+    // Heuristic score at which the side that just moved is taken to win three games out of four
+    private static final double EVALUATION_SCALE = 1800;
+    // Results are fixed point, ONE being a win for the player who moved into the node
+    private static final long ONE = 1 << 16;
+
+    private static final int UNEXPANDED = 0;
+    private static final int EXPANDING = 1;
+    private static final int EXPANDED = 2;
+    // The move into the node made five
+    private static final int WON = 3;
+    // No room left in the tree, the node stays a leaf
+    private static final int FULL = 4;
+
+    GomokuGame game;
+    private final int playouts;
+    private final ExecutorService pool;
+    private final Worker[] workers;
+    private final AtomicLong stopTime = new AtomicLong(Long.MAX_VALUE);
+    private ThreatSolver threatSolver =
+            new ThreatSolver(GomokuGameAI.DEFAULT_THREAT_NODES, GomokuGameAI.DEFAULT_THREAT_TIME, stopTime);
+
+    // Tree, node 0 being the root: the cell x * size + y of the move into each node, the range of its children,
+    // its state, its visits and the sum of its results
+    private final int capacity;
+    private final int[] moves;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final AtomicIntegerArray states;
+    private final AtomicIntegerArray visits;
+    private final AtomicLongArray values;
+    private final AtomicInteger nodeCount = new AtomicInteger();
+    private final AtomicLong playoutCount = new AtomicLong();
+    private int rootPlayer;
+
+    // Counters of the last search
+    private long lastPlayouts;
+    private long lastNanos;
+    private int lastNodes;
+    private double lastWinRate;
+
+    public MonteCarloEngine(GomokuGame game) {
+        this(game, DEFAULT_PLAYOUTS, DEFAULT_TREE_SIZE, 1);
+    }
+
+    // playouts is the budget of findBestMove, treeSizeMB bounds the tree, threads is the number of search threads
+    public MonteCarloEngine(GomokuGame game, int playouts, int treeSizeMB, int threads) {
+        if (playouts < 1 || treeSizeMB < 1 || threads < 1) {
+            throw new IllegalArgumentException("Playouts, tree size and threads should be at least 1");
+        }
+        this.game = game;
+        this.playouts = playouts;
+        this.capacity = (int) Math.min((long) treeSizeMB * 1024 * 1024 / NODE_BYTES, Integer.MAX_VALUE - 8);
+        this.moves = new int[capacity];
+        this.firstChild = new int[capacity];
+        this.childCount = new int[capacity];
+        this.states = new AtomicIntegerArray(capacity);
+        this.visits = new AtomicIntegerArray(capacity);
+        this.values = new AtomicLongArray(capacity);
+        this.workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(game.boardSize);
+        }
+        this.pool = threads > 1 ? Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "gomoku-mcts");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    // Set the budgets of the threat-space search run before each search, a node budget of 0 turns it off
+    public void setThreatSearch(int nodeBudget, long timeBudgetMillis) {
+        threatSolver = nodeBudget > 0 ? new ThreatSolver(nodeBudget, timeBudgetMillis, stopTime) : null;
+    }
+
+    public void setGame(GomokuGame game) {
+        if (game.boardSize != this.game.boardSize) {
+            throw new IllegalArgumentException("Board size should stay " + this.game.boardSize);
+        }
+        this.game = game;
+    }
+
+    public void setStopTime(long stopMillis) {
+        stopTime.set(stopMillis);
+    }
+
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    public int[] findBestMove() {
+        return search(playouts, Long.MAX_VALUE);
+    }
+
+    public int[] findBestMoveBefore(long deadlineMillis) {
+        return search(Long.MAX_VALUE, deadlineMillis);
+    }
+
+    // Nodes of the tree the last search built
+    public long getNodeCount() {return lastNodes;}
+    public long getPlayouts() {return lastPlayouts;}
+    // Playouts of all threads together per second of the last search
+    public double getPlayoutsPerSecond() {return lastNanos == 0 ? 0 : lastPlayouts * 1e9 / lastNanos;}
+    // Share of the results won by the move returned, from the side to move
+    public double getWinRate() {return lastWinRate;}
+
+    private int[] search(long playoutBudget, long deadlineMillis) {
+        long start = System.nanoTime();
+        lastPlayouts = 0;
+        lastNodes = 0;
+        lastWinRate = 0.5;
+        int size = game.boardSize;
+        rootPlayer = game.getCurrentPlayer();
+        // Candidates only come from stones already played, so an empty board opens in the centre
+        if (game.getTotalMoves() == 0) {
+            lastNanos = System.nanoTime() - start;
+            return new int[] {size / 2, size / 2};
+        }
+        if (threatSolver != null) {
+            int[] threatMove = threatSolver.solveVCF(game.getBoard(), rootPlayer, GomokuGameAI.VCF_DEPTH, deadlineMillis);
+            if (threatMove != null) {
+                lastWinRate = 1;
+                lastNanos = System.nanoTime() - start;
+                return threatMove;
+            }
+        }
+
+        for (Worker worker : workers) {
+            worker.prepare(game);
+        }
+        nodeCount.set(1);
+        playoutCount.set(0);
+        clearNode(0);
+        workers[0].expand(0, rootPlayer);
+        if (states.get(0) != EXPANDED) {
+            throw new IllegalStateException("Tree too small for the root moves");
+        }
+
+        if (pool == null) {
+            workers[0].run(playoutBudget, deadlineMillis);
+        }
+        else {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (Worker worker : workers) {
+                tasks.add(() -> {
+                    worker.run(playoutBudget, deadlineMillis);
+                    return null;
+                });
+            }
+            try {
+                for (Future<Void> future : pool.invokeAll(tasks)) {
+                    future.get();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e) {
+                throw new IllegalStateException("Search thread failed", e.getCause());
+            }
+        }
+
+        // The most visited root move, the earlier in heuristic order on a tie
+        int best = firstChild[0];
+        for (int child = firstChild[0]; child < firstChild[0] + childCount[0]; child++) {
+            if (visits.get(child) > visits.get(best)) {
+                best = child;
+            }
+        }
+        lastPlayouts = playoutCount.get();
+        lastNodes = nodeCount.get();
+        lastWinRate = visits.get(best) == 0 ? 0.5 : (double) values.get(best) / ONE / visits.get(best);
+        lastNanos = System.nanoTime() - start;
+        return new int[] {moves[best] / size, moves[best] % size};
+    }
+
+    private void clearNode(int node) {
+        states.set(node, UNEXPANDED);
+        visits.set(node, 0);
+        values.set(node, 0);
+    }
+
+    // One search thread: its own board, and the incremental pattern counters and candidate moves that follow it move
+    // by move
+    private final class Worker {
+        private final PatternEvaluator evaluator;
+        private Bitboard board;
+        // Nodes of the current path, and scratch of expand
+        private final int[] path;
+        private final int[] cells;
+        private final long[] keys;
+
+        Worker(int size) {
+            this.evaluator = new PatternEvaluator(size);
+            this.path = new int[size * size + 1];
+            this.cells = new int[size * size];
+            this.keys = new long[size * size];
+        }
+
+        void prepare(GomokuGame game) {
+            evaluator.rebuild(game.getBoard());
+            board = game.getBoardCopy();
+        }
+
+        // Every thread plays at least one playout, so there is a move to return
+        void run(long playoutBudget, long deadlineMillis) {
+            boolean first = true;
+            while (true) {
+                if (!first && System.currentTimeMillis() >= Math.min(deadlineMillis, stopTime.get())) {
+                    break;
+                }
+                if (playoutCount.getAndIncrement() >= playoutBudget && !first) {
+                    playoutCount.getAndDecrement();
+                    break;
+                }
+                first = false;
+                playout();
+            }
+        }
+
+        // Walk down the tree from the root to a leaf, score it and add the result to the nodes of the path
+        private void playout() {
+            int size = board.size;
+            int node = 0;
+            int length = 0;
+            int player = rootPlayer;
+            visits.addAndGet(0, VIRTUAL_LOSS);
+            path[length++] = 0;
+            long result;
+            while (true) {
+                int state = states.get(node);
+                if (state == WON) {
+                    result = ONE;
+                    break;
+                }
+                // A leaf is scored as it is the first time it is reached, and only grows children when reached again
+                if (state == UNEXPANDED && visits.get(node) > VIRTUAL_LOSS) {
+                    expand(node, player);
+                    state = states.get(node);
+                }
+                if (state != EXPANDED) {
+                    result = evaluate(player);
+                    break;
+                }
+                int child = select(node);
+                if (child < 0) {
+                    // No move left, a draw
+                    result = ONE / 2;
+                    break;
+                }
+                visits.addAndGet(child, VIRTUAL_LOSS);
+                path[length++] = child;
+                int cell = moves[child];
+                evaluator.simulateMove(board, cell / size, cell % size, player);
+                node = child;
+                player = player == 1 ? 2 : 1;
+                if (states.get(child) == UNEXPANDED && board.checkWin(cell / size, cell % size)) {
+                    states.compareAndSet(child, UNEXPANDED, WON);
+                }
+            }
+
+            // result is for the player who moved into the leaf, and alternates up the path
+            for (int i = length - 1; i >= 0; i--) {
+                int pathNode = path[i];
+                values.addAndGet(pathNode, result);
+                visits.addAndGet(pathNode, 1 - VIRTUAL_LOSS);
+                result = ONE - result;
+                if (i > 0) {
+                    int cell = moves[pathNode];
+                    evaluator.simulateMove(board, cell / size, cell % size, 0);
+                }
+            }
+        }
+
+        // UCT over the children the node's visits allow, an unvisited one first
+        private int select(int node) {
+            int count = childCount[node];
+            if (count == 0) {
+                return -1;
+            }
+            int parentVisits = Math.max(1, visits.get(node));
+            int width = Math.min(count, 1 + (int) Math.sqrt(parentVisits));
+            double logVisits = Math.log(parentVisits);
+            int first = firstChild[node];
+            int best = first;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int child = first; child < first + width; child++) {
+                int childVisits = visits.get(child);
+                if (childVisits == 0) {
+                    return child;
+                }
+                double value = (double) values.get(child) / ONE / childVisits
+                        + EXPLORATION * Math.sqrt(logVisits / childVisits);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        // Give the node its children, the candidate moves of the player to move best first, unless another thread
+        // is already at it or the tree is full
+        void expand(int node, int player) {
+            if (!states.compareAndSet(node, UNEXPANDED, EXPANDING)) {
+                return;
+            }
+            int size = board.size;
+            int opponent = player == 1 ? 2 : 1;
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                long row = evaluator.candidates.row(i);
+                while (row != 0) {
+                    int j = Long.numberOfTrailingZeros(row);
+                    row &= row - 1;
+                    int score = evaluator.scoreMove(board, player, opponent, true, i, j);
+                    cells[count] = i * size + j;
+                    keys[count] = ((long) score << 32) | (Integer.MAX_VALUE - cells[count]);
+                    count++;
+                }
+            }
+            GomokuGameAI.sortByRank(cells, keys, count);
+
+            // Claim the children's slots only while they fit, so the count never passes the capacity
+            int first;
+            do {
+                first = nodeCount.get();
+                if (first > capacity - count) {
+                    states.set(node, FULL);
+                    return;
+                }
+            } while (!nodeCount.compareAndSet(first, first + count));
+            for (int i = 0; i < count; i++) {
+                moves[first + i] = cells[i];
+                clearNode(first + i);
+            }
+            firstChild[node] = first;
+            childCount[node] = count;
+            // The atomic write publishes the children to the threads that read the state
+            states.set(node, EXPANDED);
+        }
+
+        // Chance that the player who just moved wins, from the heuristic score with the other player to move
+        private long evaluate(int player) {
+            int moved = player == 1 ? 2 : 1;
+            int score = evaluator.calculateHeuristicsScore(moved, player, false);
+            return (long) (ONE / (1 + Math.exp(-score / EVALUATION_SCALE * Math.log(3))));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int size = 15;
+        long timeMillis = 2000;
+        int treeMB = DEFAULT_TREE_SIZE;
+        String threadCounts = "1," + Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--size": size = Integer.parseInt(value); break;
+                case "--time": timeMillis = Long.parseLong(value); break;
+                case "--threads": threadCounts = value; break;
+                case "--tree": treeMB = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        // The regression positions of the board size, played out from their move lists
+        List<GomokuGame> positions = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get("search-regression.txt"), StandardCharsets.US_ASCII)) {
+            String[] fields = line.split("\t");
+            if (line.startsWith("#") || fields.length < 4 || Integer.parseInt(fields[1]) != size) {
+                continue;
+            }
+            GomokuGame game = new GomokuGame(size);
+            MoveNotation.play(game, fields[3]);
+            positions.add(game);
+        }
+        if (positions.isEmpty()) {
+            throw new IllegalArgumentException("No positions of size " + size);
+        }
+
+        // Untimed pass so the first thread count is not measured while the JIT compiles
+        MonteCarloEngine warmUp = new MonteCarloEngine(positions.get(0), DEFAULT_PLAYOUTS, treeMB, 1);
+        warmUp.setThreatSearch(0, 0);
+        for (GomokuGame position : positions) {
+            warmUp.setGame(position);
+            warmUp.findBestMoveBefore(System.currentTimeMillis() + timeMillis / positions.size());
+        }
+
+        double single = 0;
+        for (String count : threadCounts.split(",")) {
+            int threads = Integer.parseInt(count.trim());
+            MonteCarloEngine engine = new MonteCarloEngine(positions.get(0), DEFAULT_PLAYOUTS, treeMB, threads);
+            engine.setThreatSearch(0, 0);
+            long playouts = 0;
+            long nanos = 0;
+            for (GomokuGame position : positions) {
+                engine.setGame(position);
+                engine.findBestMoveBefore(System.currentTimeMillis() + timeMillis / positions.size());
+                playouts += engine.getPlayouts();
+                nanos += engine.lastNanos;
+            }
+            engine.shutdown();
+            double rate = playouts * 1e9 / nanos;
+            if (single == 0) {
+                single = rate / threads;
+            }
+            System.out.printf(Locale.ROOT, "threads %d: %.0f playouts per second (%.2fx one thread)%n", threads, rate, rate / single);
+        }
+    }
+}
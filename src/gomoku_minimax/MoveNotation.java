@@ -0,0 +1,44 @@
+package gomoku_minimax;
+
+// Moves written as in h8: the column as a letter from a, then the row as a number from 1, so cell (x, y) of the game
+// is the letter 'a' + y and the number x + 1. The tournament records, opening book sources, regression positions and
+// batch evaluator files all use it
+public class MoveNotation {
+    // Columns are the letters a to z
+    public static final int MAX_SIZE = 26;
+
+    // Boards too wide for a column letter cannot be written down
+    public static void checkBoardSize(int size) {
+        if (size > MAX_SIZE) {
+            throw new IllegalArgumentException("Board size should be at most " + MAX_SIZE + " for h8 moves");
+        }
+    }
+
+    // Cell {x, y} of the move on a board of the size, or IllegalArgumentException if it is not a move on that board
+    public static int[] parseMove(String field, int size) {
+        if (!field.matches("[a-z][0-9]{1,2}")) {
+            throw new IllegalArgumentException("not a move: " + field);
+        }
+        int x = Integer.parseInt(field.substring(1)) - 1;
+        int y = field.charAt(0) - 'a';
+        if (x < 0 || x >= size || y >= size) {
+            throw new IllegalArgumentException("not on the board: " + field);
+        }
+        return new int[] {x, y};
+    }
+
+    public static String formatMove(int x, int y) {
+        return (char) ('a' + y) + Integer.toString(x + 1);
+    }
+
+    // Play the moves separated by spaces from the current position, or IllegalArgumentException at the first one that
+    // does not parse or is illegal there
+    public static void play(GomokuGame game, String moves) {
+        for (String field : moves.trim().isEmpty() ? new String[0] : moves.trim().split("\\s+")) {
+            int[] move = parseMove(field, game.boardSize);
+            if (game.isGameOver() || !game.move(move[0], move[1])) {
+                throw new IllegalArgumentException("illegal move " + field);
+            }
+        }
+    }
+}
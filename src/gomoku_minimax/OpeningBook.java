@@ -0,0 +1,327 @@
+package gomoku_minimax;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Book of opening moves, looked up before any search
+// Positions are keyed by their Zobrist hash normalised over the 8 symmetries of the board (the smallest hash of the
+// rotated and mirrored positions), so a position and its mirror images share one entry, and the move is stored in the
+// frame of that smallest hash
+//
+// File layout, big-endian: magic, version, board size, plies covered and entry count as ints, then the entries
+// sorted by key and best first, each a long key, a short cell (x * size + y), a short game count and an int score
+// in half points for the side that played the move. The file is memory-mapped, so opening it costs nothing and
+// processes using the same book share its pages
+//
+// Usage: OpeningBook --out opening-book.bin [--size 15] [--plies 10] [--first-ply 0] [--min-games 4] records...
+//        OpeningBook --out opening-book.bin --self-play 2000 [--engine depth=3] [--opening 4] [--threads N] ...
+// Records are lines of the tournament record file: anything up to the result (1-0, 0-1 or 1/2), then moves as h8
+public class OpeningBook {
+    private static final int MAGIC = 0x474D4B42;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+    private static final int ENTRY_BYTES = 16;
+    // Inverse of each symmetry in the numbering used by transform
+    private static final int[] INVERSE = {0, 3, 2, 1, 4, 5, 6, 7};
+
+    final int size;
+    final int plies;
+    private final int count;
+    private final ByteBuffer entries;
+    // Only used for its Zobrist keys
+    private final Bitboard keys;
+
+    private OpeningBook(ByteBuffer buffer) {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not an opening book of version " + VERSION);
+        }
+        this.size = buffer.getInt(8);
+        this.plies = buffer.getInt(12);
+        this.count = buffer.getInt(16);
+        this.entries = buffer;
+        this.keys = new Bitboard(size);
+    }
+
+    public static OpeningBook load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // Book move for the game's position, or null if the book does not have it
+    // Safe to call from several threads at once
+    public int[] probe(GomokuGame game) {
+        if (game.boardSize != size || game.getTotalMoves() >= plies) {
+            return null;
+        }
+        long[] canonical = canonicalKey(game.getBoardCopy(), keys);
+        int symmetry = (int) canonical[1];
+
+        // First entry with the key, which is the best move of the position
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (key(middle) < canonical[0]) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < count && key(i) == canonical[0]; i++) {
+            int cell = entries.getShort(HEADER_BYTES + i * ENTRY_BYTES + 8);
+            int[] move = transform(INVERSE[symmetry], cell / size, cell % size, size);
+            if (game.isEmpty(move[0], move[1])) {
+                return move;
+            }
+        }
+        return null;
+    }
+
+    private long key(int index) {
+        return entries.getLong(HEADER_BYTES + index * ENTRY_BYTES);
+    }
+
+    public int size() {return count;}
+
+    // Cell (x, y) under symmetry 0 to 7: the identity, three rotations by a quarter turn, and four reflections
+    static int[] transform(int symmetry, int x, int y, int size) {
+        int last = size - 1;
+        switch (symmetry) {
+            case 0: return new int[] {x, y};
+            case 1: return new int[] {y, last - x};
+            case 2: return new int[] {last - x, last - y};
+            case 3: return new int[] {last - y, x};
+            case 4: return new int[] {x, last - y};
+            case 5: return new int[] {last - x, y};
+            case 6: return new int[] {y, x};
+            default: return new int[] {last - y, last - x};
+        }
+    }
+
+    // Smallest hash of the position over the 8 symmetries, and the symmetry giving it
+    static long[] canonicalKey(Bitboard board, Bitboard keys) {
+        long[] hashes = new long[8];
+        for (int x = 0; x < board.size; x++) {
+            for (int y = 0; y < board.size; y++) {
+                int player = board.get(x, y);
+                if (player == 0) {
+                    continue;
+                }
+                for (int symmetry = 0; symmetry < 8; symmetry++) {
+                    int[] cell = transform(symmetry, x, y, board.size);
+                    hashes[symmetry] ^= keys.zobristKey(player, cell[0], cell[1]);
+                }
+            }
+        }
+        int best = 0;
+        for (int symmetry = 1; symmetry < 8; symmetry++) {
+            if (hashes[symmetry] < hashes[best]) {
+                best = symmetry;
+            }
+        }
+        return new long[] {hashes[best], best};
+    }
+
+    // Collects the moves played from each position of a set of games, then writes them as a book
+    static class Builder {
+        final int size;
+        final int plies;
+        final int firstPly;
+        private final Bitboard keys;
+        // Canonical key to canonical cell to {games, half points}
+        private final Map<Long, Map<Integer, int[]>> positions = new HashMap<>();
+
+        Builder(int size, int plies, int firstPly) {
+            MoveNotation.checkBoardSize(size);
+            this.size = size;
+            this.plies = plies;
+            this.firstPly = firstPly;
+            this.keys = new Bitboard(size);
+        }
+
+        // Add one game record, return false if it has no result or holds an illegal move
+        boolean addRecord(String record) {
+            String[] fields = record.trim().split("\\s+");
+            int start = 0;
+            while (start < fields.length && !isResult(fields[start])) {
+                start++;
+            }
+            if (start == fields.length) {
+                return false;
+            }
+            // Half points of black, white gets the rest
+            int blackPoints = fields[start].equals("1-0") ? 2 : fields[start].equals("0-1") ? 0 : 1;
+
+            // Replay the whole record first, so a bad one adds nothing
+            List<int[]> moves = new ArrayList<>();
+            GomokuGame game = new GomokuGame(size);
+            for (int i = start + 1; i < fields.length && moves.size() < plies; i++) {
+                int[] move;
+                try {
+                    move = MoveNotation.parseMove(fields[i], size);
+                }
+                catch (IllegalArgumentException e) {
+                    return false;
+                }
+                if (!game.move(move[0], move[1])) {
+                    return false;
+                }
+                moves.add(move);
+            }
+
+            game = new GomokuGame(size);
+            for (int[] move : moves) {
+                int x = move[0];
+                int y = move[1];
+                if (game.getTotalMoves() >= firstPly) {
+                    long[] canonical = canonicalKey(game.getBoardCopy(), keys);
+                    int[] cell = transform((int) canonical[1], x, y, size);
+                    int[] stats = positions.computeIfAbsent(canonical[0], key -> new HashMap<>())
+                            .computeIfAbsent(cell[0] * size + cell[1], key -> new int[2]);
+                    stats[0]++;
+                    stats[1] += game.getCurrentPlayer() == 1 ? blackPoints : 2 - blackPoints;
+                }
+                game.move(x, y);
+            }
+            return true;
+        }
+
+        private static boolean isResult(String field) {
+            return field.equals("1-0") || field.equals("0-1") || field.equals("1/2");
+        }
+
+        // Write the moves played at least minGames times, the best mean score first for each position and the most
+        // played first among equal means, so a move that won every game outranks one played more often that mostly lost
+        // minGames keeps a move seen in a game or two from taking the lead on luck
+        int write(Path path, int minGames) throws IOException {
+            List<long[]> rows = new ArrayList<>();
+            for (Map.Entry<Long, Map<Integer, int[]>> position : positions.entrySet()) {
+                for (Map.Entry<Integer, int[]> move : position.getValue().entrySet()) {
+                    int[] stats = move.getValue();
+                    if (stats[0] >= minGames) {
+                        rows.add(new long[] {position.getKey(), move.getKey(), stats[0], stats[1]});
+                    }
+                }
+            }
+            rows.sort((a, b) -> {
+                if (a[0] != b[0]) {
+                    return Long.compare(a[0], b[0]);
+                }
+                // Half points per game compared without dividing, b[3] / b[2] against a[3] / a[2]
+                int mean = Long.compare(b[3] * a[2], a[3] * b[2]);
+                return mean != 0 ? mean : Long.compare(b[2], a[2]);
+            });
+
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + rows.size() * ENTRY_BYTES);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(plies).putInt(rows.size());
+            for (long[] row : rows) {
+                buffer.putLong(row[0]).putShort((short) row[1]).putShort((short) Math.min(row[2], Short.MAX_VALUE)).putInt((int) row[3]);
+            }
+            buffer.flip();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            return rows.size();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String out = "opening-book.bin";
+        int size = 15;
+        int plies = 10;
+        Integer firstPly = null;
+        int minGames = 4;
+        int selfPlay = 0;
+        String engine = "depth=3";
+        int opening = 4;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 1;
+        List<String> records = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                records.add(args[i]);
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--out": out = value; break;
+                case "--size": size = Integer.parseInt(value); break;
+                case "--plies": plies = Integer.parseInt(value); break;
+                case "--first-ply": firstPly = Integer.parseInt(value); break;
+                case "--min-games": minGames = Integer.parseInt(value); break;
+                case "--self-play": selfPlay = Integer.parseInt(value); break;
+                case "--engine": engine = value; break;
+                case "--opening": opening = Integer.parseInt(value); break;
+                case "--threads": threads = Integer.parseInt(value); break;
+                case "--seed": seed = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+            }
+        }
+
+        // The random moves that open self-play games say nothing about good openings
+        Builder builder = new Builder(size, plies, firstPly != null ? firstPly : selfPlay > 0 ? opening : 0);
+        int games = 0;
+        int rejected = 0;
+        for (String file : records) {
+            for (String line : Files.readAllLines(Paths.get(file))) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                if (builder.addRecord(line)) {
+                    games++;
+                }
+                else {
+                    rejected++;
+                }
+            }
+        }
+
+        if (selfPlay > 0) {
+            Tournament.Player player = new Tournament.Player("A", engine);
+            Tournament tournament = new Tournament(player, new Tournament.Player("B", engine), size, opening, seed);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<String>> results = new ArrayList<>();
+                for (int i = 0; i < selfPlay; i++) {
+                    int index = i;
+                    results.add(pool.submit(() -> tournament.playGame(index)));
+                }
+                for (Future<String> result : results) {
+                    builder.addRecord(result.get());
+                    games++;
+                }
+            }
+            catch (ExecutionException e) {
+                throw new IllegalStateException("Self-play game failed", e.getCause());
+            }
+            finally {
+                pool.shutdownNow();
+            }
+        }
+
+        int entries = builder.write(Paths.get(out), minGames);
+        System.out.println("Wrote " + entries + " book moves from " + games + " games to " + out
+                + (rejected > 0 ? ", skipped " + rejected + " unreadable records" : ""));
+    }
+}
@@ -0,0 +1,132 @@
+package gomoku_minimax;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import gomoku_minimax.GomokuGameAI.HeuristicCounter;
+
+// Pattern counts of both players and the candidate moves of a position, kept up to date stone by stone, and the
+// heuristic scores read from them
+// The alpha-beta engine searches with one, and every Monte Carlo worker evaluates its playouts with its own
+public class PatternEvaluator {
+    final int size;
+    Map<Integer, HeuristicCounter> counters = new HashMap<>();
+    CandidateMoves candidates;
+    // Scratch of scoreMove
+    private final long[] placementCounts = new long[4];
+    private final HeuristicCounter scoreMaxCounter = new HeuristicCounter();
+    private final HeuristicCounter scoreMinCounter = new HeuristicCounter();
+
+    public PatternEvaluator(int size) {
+        this.size = size;
+        this.counters.put(1, new HeuristicCounter());
+        this.counters.put(2, new HeuristicCounter());
+        this.candidates = new CandidateMoves(size);
+    }
+
+    // Play the player's stone on the cell, or empty it with player 0, and update the counters and candidates
+    public void simulateMove(Bitboard board, int x, int y, int player) {
+        updateBoardHeuristicsCount(board, x, y, 1, counters.get(1), true);
+        updateBoardHeuristicsCount(board, x, y, 2, counters.get(2), true);
+        int occupant = board.get(x, y);
+        board.set(x, y, player);
+        updateBoardHeuristicsCount(board, x, y, 1, counters.get(1), false);
+        updateBoardHeuristicsCount(board, x, y, 2, counters.get(2), false);
+
+        if (player != 0) {
+            candidates.place(x, y);
+        }
+        else if (occupant != 0) {
+            candidates.remove(x, y);
+        }
+    }
+
+    // Count everything again from the stones of the board, into new counters and candidates
+    public void rebuild(Bitboard board) {
+        counters.put(1, new HeuristicCounter());
+        counters.put(2, new HeuristicCounter());
+        candidates = new CandidateMoves(size);
+        Bitboard tempBoard = new Bitboard(size);
+        // Only the stones are visited, in row-major order
+        for (int i = 0; i < size; i++) {
+            long stones = board.row(1, i) | board.row(2, i);
+            while (stones != 0) {
+                int j = Long.numberOfTrailingZeros(stones);
+                stones &= stones - 1;
+                simulateMove(tempBoard, i, j, board.get(i, j));
+            }
+        }
+    }
+
+    // Count the patterns of the windows through (x, y) on its four lines, reading the lines straight from the bitboard
+    // simulateMove calls this before and after changing the cell, so only windows through it are needed, the rest cancel out
+    public void updateBoardHeuristicsCount(Bitboard board, int x, int y, int player, HeuristicCounter counter, boolean subtract) {
+        counter.add(PatternTable.countThrough(board, x, y, player), subtract ? -1 : 1);
+    }
+
+    // Not exact
+    // Encode the line as player and blocked bitmasks and sum the precomputed counts of its windows
+    public void checkLinePatterns(int[] line, int player, HeuristicCounter counter, boolean subtract) {
+        if (line.length < 5) {
+            return;
+        }
+        long playerBits = 0;
+        long blockedBits = -1L << line.length;
+        for (int i = 0; i < line.length; i++) {
+            if (line[i] == player) {
+                playerBits |= 1L << i;
+            }
+            else if (line[i] != 0) {
+                blockedBits |= 1L << i;
+            }
+        }
+        counter.add(PatternTable.countWindows(playerBits, blockedBits, 0, line.length - 5), subtract ? -1 : 1);
+    }
+
+    public int calculateHeuristicsScore(int maxPlayer, int minPlayer, boolean maxTurn) {
+        return heuristicsScore(counters.get(maxPlayer), counters.get(minPlayer), maxTurn);
+    }
+
+    // Heuristic score after maxPlayer plays the empty cell (x, y), the same as playing it with simulateMove and calling
+    // calculateHeuristicsScore, but worked out from one pass over the cell's lines without touching the board,
+    // counters or candidates
+    public int scoreMove(Bitboard board, int maxPlayer, int minPlayer, boolean maxTurn, int x, int y) {
+        long[] counts = placementCounts;
+        PatternTable.countPlacement(board, x, y, maxPlayer, counts);
+        int maxBefore = (maxPlayer - 1) * 2;
+        int minBefore = (minPlayer - 1) * 2;
+        scoreMaxCounter.set(counters.get(maxPlayer));
+        scoreMaxCounter.add(counts[maxBefore], -1);
+        scoreMaxCounter.add(counts[maxBefore + 1], 1);
+        scoreMinCounter.set(counters.get(minPlayer));
+        scoreMinCounter.add(counts[minBefore], -1);
+        scoreMinCounter.add(counts[minBefore + 1], 1);
+        return heuristicsScore(scoreMaxCounter, scoreMinCounter, maxTurn);
+    }
+
+    static int heuristicsScore(HeuristicCounter maxCounter, HeuristicCounter minCounter, boolean maxTurn) {
+        if (maxCounter.five > 0) return 1000000;
+        if (minCounter.five > 0) return -1000000;
+
+        if (maxTurn && maxCounter.openFour > 0) return 500000;
+        if (!maxTurn && minCounter.openFour > 0) return -500000;
+
+        int score = 0;
+        score += maxCounter.openFour * 50000;
+        score += minCounter.openFour * -50000;
+
+        score += maxCounter.closedFour * 10000;
+        score += minCounter.closedFour * -10000;
+
+        score += maxCounter.openThree * 1000;
+        score += minCounter.openThree * -1000;
+
+        score += maxCounter.closedThree * 300;
+        score += minCounter.closedThree * -300;
+
+        score += maxCounter.openTwo * 50;
+        score += minCounter.openTwo * -50;
+
+        return score;
+    }
+}
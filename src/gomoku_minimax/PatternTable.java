@@ -0,0 +1,160 @@
+package gomoku_minimax;
+
+// Precomputed pattern counts for every 6-cell window of a line
+// A line is encoded as two bitmasks, the cells of the counted player and the cells blocked for it (opponent stones
+// or outside the line), and each window is looked up by its 6 player bits and 6 blocked bits
+// The counts are packed into a long with 8 bits per pattern, so the counts of several windows can simply be summed
+public final class PatternTable {
+    static final int FIVE = 0;
+    static final int OPEN_FOUR = 8;
+    static final int CLOSED_FOUR = 16;
+    static final int OPEN_THREE = 24;
+    static final int CLOSED_THREE = 32;
+    static final int OPEN_TWO = 40;
+    static final int CLOSED_TWO = 48;
+
+    // Indexed by player bits | blocked bits << 6, holding the counts of the 5-cell window starting at the first cell
+    // and the open four of the whole 6-cell window
+    private static final long[] WINDOWS = new long[1 << 12];
+
+    static {
+        int[] cells = new int[6];
+        for (int player = 0; player < 64; player++) {
+            for (int blocked = 0; blocked < 64; blocked++) {
+                if ((player & blocked) != 0) {
+                    continue;
+                }
+                // 1 is the player, 2 is blocked and 0 is empty
+                for (int k = 0; k < 6; k++) {
+                    cells[k] = (player >> k & 1) != 0 ? 1 : (blocked >> k & 1) != 0 ? 2 : 0;
+                }
+                WINDOWS[player | blocked << 6] = countWindow(cells);
+            }
+        }
+    }
+
+    private PatternTable() {}
+
+    // Same rules as the original window scan of checkLinePatterns
+    private static long countWindow(int[] cells) {
+        long counts = 0;
+
+        // Open four: four stones in the 6-cell window with both ends empty
+        int sixCount = 0;
+        for (int k = 0; k < 6; k++) {
+            if (cells[k] == 1) {
+                sixCount++;
+            }
+        }
+        if (sixCount == 4 && cells[0] == 0 && cells[5] == 0) {
+            counts += 1L << OPEN_FOUR;
+        }
+
+        // Other patterns: the 5-cell window must not contain any blocked cell
+        int countPlayer = 0;
+        int countEmpty = 0;
+        for (int k = 0; k < 5; k++) {
+            if (cells[k] == 1) {
+                countPlayer++;
+            }
+            else if (cells[k] == 0) {
+                countEmpty++;
+            }
+        }
+        if ((countEmpty + countPlayer) == 5 && countPlayer >= 2) {
+            if (countPlayer == 5) {
+                counts += 1L << FIVE;
+            }
+            else if (countPlayer == 4) {
+                counts += 1L << CLOSED_FOUR;
+            }
+            else if (countPlayer == 3) {
+                counts += (cells[0] == 0 && cells[4] == 0) ? 1L << OPEN_THREE : 1L << CLOSED_THREE;
+            }
+            else {
+                boolean open = (cells[0] + cells[3] + cells[4] == 0) || (cells[0] + cells[1] + cells[4] == 0);
+                counts += open ? 1L << OPEN_TWO : 1L << CLOSED_TWO;
+            }
+        }
+        return counts;
+    }
+
+    // Sum the packed counts of every window starting between from and to
+    // Bits outside the line must already be set in blocked, so windows running past its end are never counted as open
+    static long countWindows(long player, long blocked, int from, int to) {
+        long counts = 0;
+        for (int i = from; i <= to; i++) {
+            counts += WINDOWS[(int) ((player >>> i) & 63) | (int) ((blocked >>> i) & 63) << 6];
+        }
+        return counts;
+    }
+
+    // Sum the packed counts of the windows through (x, y) on its four lines, reading the lines straight from the bitboard
+    // Windows starting up to 5 cells before the cell are included, as their 6-cell open four runs through it
+    static long countThrough(Bitboard board, int x, int y, int player) {
+        int opponent = (player == 1) ? 2 : 1;
+        int last = board.size - 1;
+
+        // Horizontal and vertical
+        long counts = countAround(board.row(player, x), board.row(opponent, x), 0, last, y);
+        counts += countAround(board.column(player, y), board.column(opponent, y), 0, last, x);
+
+        // Diagonals, cells are indexed by row
+        counts += countAround(board.diagonalDown(player, x, y), board.diagonalDown(opponent, x, y),
+                Math.max(0, x - y), Math.min(last, last + x - y), x);
+        counts += countAround(board.diagonalUp(player, x, y), board.diagonalUp(opponent, x, y),
+                Math.max(0, x + y - last), Math.min(last, x + y), x);
+        return counts;
+    }
+
+    // The line occupies cells first to last of the masks
+    private static long countAround(long playerBits, long opponentBits, int first, int last, int position) {
+        if (last - first < 4) {
+            return 0;
+        }
+        // Cells outside the line are blocked
+        long blockedBits = opponentBits | ((1L << first) - 1) | (-1L << (last + 1));
+        return countWindows(playerBits, blockedBits, Math.max(first, position - 5), Math.min(last - 4, position));
+    }
+
+    // Counts of the windows through the empty cell (x, y) for both players, before and after a stone of the placed
+    // player goes there, in one pass over its four lines: counts gets player 1 before and after, then player 2 before
+    // and after. The change of each player's counts is the change playing the stone makes to the whole board
+    static void countPlacement(Bitboard board, int x, int y, int placed, long[] counts) {
+        int last = board.size - 1;
+        counts[0] = 0;
+        counts[1] = 0;
+        counts[2] = 0;
+        counts[3] = 0;
+        placementAround(board.row(1, x), board.row(2, x), 0, last, y, placed, counts);
+        placementAround(board.column(1, y), board.column(2, y), 0, last, x, placed, counts);
+        placementAround(board.diagonalDown(1, x, y), board.diagonalDown(2, x, y),
+                Math.max(0, x - y), Math.min(last, last + x - y), x, placed, counts);
+        placementAround(board.diagonalUp(1, x, y), board.diagonalUp(2, x, y),
+                Math.max(0, x + y - last), Math.min(last, x + y), x, placed, counts);
+    }
+
+    private static void placementAround(long ones, long twos, int first, int last, int position, int placed, long[] counts) {
+        if (last - first < 4) {
+            return;
+        }
+        long outside = ((1L << first) - 1) | (-1L << (last + 1));
+        long bit = 1L << position;
+        long onesAfter = placed == 1 ? ones | bit : ones;
+        long twosAfter = placed == 2 ? twos | bit : twos;
+        long onesBlocked = twos | outside;
+        long onesBlockedAfter = twosAfter | outside;
+        long twosBlocked = ones | outside;
+        long twosBlockedAfter = onesAfter | outside;
+        for (int i = Math.max(first, position - 5); i <= Math.min(last - 4, position); i++) {
+            counts[0] += WINDOWS[(int) ((ones >>> i) & 63) | (int) ((onesBlocked >>> i) & 63) << 6];
+            counts[1] += WINDOWS[(int) ((onesAfter >>> i) & 63) | (int) ((onesBlockedAfter >>> i) & 63) << 6];
+            counts[2] += WINDOWS[(int) ((twos >>> i) & 63) | (int) ((twosBlocked >>> i) & 63) << 6];
+            counts[3] += WINDOWS[(int) ((twosAfter >>> i) & 63) | (int) ((twosBlockedAfter >>> i) & 63) << 6];
+        }
+    }
+
+    static int count(long counts, int pattern) {
+        return (int) ((counts >>> pattern) & 0xFF);
+    }
+}
@@ -0,0 +1,387 @@
+package gomoku_minimax;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// One game session speaking the Gomocup (piskvork) protocol, a command per line in and an answer per line out
+// Coordinates on the wire are "x,y" with x the column and y the row, where the game uses x for the row
+// Without a search pool the search runs on the calling thread, which is how the stdin engine works. With one,
+// as in EngineServer, searches of many sessions share the pool and the time waiting for a worker counts against
+// the move's time
+//
+// Usage: PiskvorkEngine [--book opening-book.bin] [--threads N]
+// reads the protocol from stdin and answers on stdout, for tournament managers that start the engine as a process
+public class PiskvorkEngine {
+    // Used until the manager sends INFO timeout_turn
+    public static final long DEFAULT_TURN_MILLIS = 5000;
+    // Kept back from every turn for the manager's own overhead
+    private static final long SAFETY_MILLIS = 30;
+
+    private final BufferedReader in;
+    private final PrintWriter out;
+    private final ExecutorService searches;
+    private final long maxTurnMillis;
+    private final int threads;
+    private OpeningBook book;
+    // Largest transposition table in MB, whatever INFO max_memory allows
+    private int maxTableMB = GomokuGameAI.DEFAULT_TABLE_SIZE;
+
+    private GomokuGame game;
+    private GomokuGameAI engine;
+
+    // Limits sent by the manager, in ms and bytes, 0 when not given
+    private long turnMillis = DEFAULT_TURN_MILLIS;
+    private long matchMillis = 0;
+    private long timeLeftMillis = 0;
+    private long maxMemory = 0;
+
+    // maxTurnMillis caps the time of every move whatever the manager asks for
+    public PiskvorkEngine(BufferedReader in, PrintWriter out, ExecutorService searches, long maxTurnMillis, int threads) {
+        if (maxTurnMillis < 1) {
+            throw new IllegalArgumentException("Maximum time per move should be at least 1 ms");
+        }
+        this.in = in;
+        this.out = out;
+        this.searches = searches;
+        this.maxTurnMillis = maxTurnMillis;
+        this.threads = threads;
+    }
+
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    // Cap the transposition table, as EngineServer does to share its memory between sessions
+    public void setMaxTableSize(int megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("Transposition table size should be at least 1 MB");
+        }
+        this.maxTableMB = megabytes;
+    }
+
+    // Answer commands until END or the end of the input
+    public void run() throws IOException, InterruptedException {
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (!handle(line)) {
+                    break;
+                }
+                out.flush();
+            }
+        }
+        finally {
+            out.flush();
+            if (engine != null) {
+                engine.shutdown();
+            }
+        }
+    }
+
+    // Answer one command, return false once the session should end
+    boolean handle(String line) throws IOException, InterruptedException {
+        long received = System.currentTimeMillis();
+        String[] parts = line.split("\\s+", 2);
+        String argument = parts.length > 1 ? parts[1].trim() : "";
+        try {
+            switch (parts[0].toUpperCase(Locale.ROOT)) {
+                case "START":
+                    start(Integer.parseInt(argument));
+                    out.println("OK");
+                    break;
+                case "RECTSTART":
+                    int[] size = parsePair(argument);
+                    if (size[0] != size[1]) {
+                        throw new IllegalArgumentException("only square boards are supported");
+                    }
+                    start(size[0]);
+                    out.println("OK");
+                    break;
+                case "RESTART":
+                    requireGame();
+                    start(game.boardSize);
+                    out.println("OK");
+                    break;
+                case "BEGIN":
+                    requireGame();
+                    if (game.getTotalMoves() != 0) {
+                        throw new IllegalArgumentException("the board is not empty");
+                    }
+                    answer(received);
+                    break;
+                case "TURN":
+                    requireGame();
+                    int[] turn = parsePair(argument);
+                    play(turn[1], turn[0]);
+                    answer(received);
+                    break;
+                case "BOARD":
+                    requireGame();
+                    board();
+                    answer(received);
+                    break;
+                case "TAKEBACK":
+                    requireGame();
+                    int[] takeback = parsePair(argument);
+                    takeBack(takeback[1], takeback[0]);
+                    out.println("OK");
+                    break;
+                case "INFO":
+                    info(argument);
+                    break;
+                case "ABOUT":
+                    out.println("name=\"gomoku-minimax\", version=\"1.0\", author=\"gomoku_minimax\"");
+                    break;
+                case "END":
+                    return false;
+                default:
+                    out.println("UNKNOWN " + parts[0]);
+                    break;
+            }
+        }
+        catch (IllegalArgumentException e) {
+            // Also covers NumberFormatException
+            out.println("ERROR " + e.getMessage());
+        }
+        catch (IllegalStateException e) {
+            // The session cannot search at all, so it ends here
+            out.println("ERROR " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    private void start(int size) {
+        if (size < 5 || size > Bitboard.MAX_SIZE) {
+            throw new IllegalArgumentException("unsupported board size " + size);
+        }
+        if (game == null || game.boardSize != size) {
+            // The engine is made at the first search, once INFO max_memory has had a chance to arrive
+            if (engine != null) {
+                engine.shutdown();
+            }
+            engine = null;
+        }
+        game = new GomokuGame(size);
+        if (engine != null) {
+            engine.setGame(game);
+        }
+    }
+
+    private void requireGame() {
+        if (game == null) {
+            throw new IllegalArgumentException("no START yet");
+        }
+    }
+
+    private void play(int x, int y) {
+        if (game.isGameOver()) {
+            throw new IllegalArgumentException("the game is over");
+        }
+        if (!game.move(x, y)) {
+            throw new IllegalArgumentException("invalid move " + y + "," + x);
+        }
+    }
+
+    // Read "x,y,field" lines up to DONE, field 1 being our stones and 2 the opponent's, and set the game to them
+    // Any other field rejects the whole board
+    // The stones are replayed alternating colors, the side to move being us
+    private void board() throws IOException {
+        List<int[]> own = new ArrayList<>();
+        List<int[]> opponent = new ArrayList<>();
+        String error = null;
+        String line;
+        while ((line = in.readLine()) != null && !line.trim().equalsIgnoreCase("DONE")) {
+            String[] fields = line.trim().split(",");
+            if (fields.length != 3) {
+                error = "bad board line " + line.trim();
+                continue;
+            }
+            try {
+                int[] cell = {Integer.parseInt(fields[1].trim()), Integer.parseInt(fields[0].trim())};
+                int field = Integer.parseInt(fields[2].trim());
+                if (field == 1) {
+                    own.add(cell);
+                }
+                else if (field == 2) {
+                    opponent.add(cell);
+                }
+                else {
+                    // 3 marks a winning line of a continuous game, which this engine does not play
+                    error = "bad board line " + line.trim();
+                }
+            }
+            catch (NumberFormatException e) {
+                error = "bad board line " + line.trim();
+            }
+        }
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+        if (own.size() != opponent.size() && own.size() + 1 != opponent.size()) {
+            throw new IllegalArgumentException("stone counts do not fit our turn");
+        }
+
+        List<int[]> first = own.size() == opponent.size() ? own : opponent;
+        List<int[]> second = first == own ? opponent : own;
+        List<int[]> replay = new ArrayList<>();
+        for (int i = 0; i < first.size(); i++) {
+            replay.add(first.get(i));
+            if (i < second.size()) {
+                replay.add(second.get(i));
+            }
+        }
+        replay(replay);
+    }
+
+    // The engine follows the undo like any move, so nothing is replayed
+    private void takeBack(int x, int y) {
+        int[] last = game.getLastMove();
+        if (last == null || last[0] != x || last[1] != y) {
+            throw new IllegalArgumentException("not the last move " + y + "," + x);
+        }
+        game.undo();
+    }
+
+    // Start the game again and play the moves, leaving the game untouched if one of them is illegal
+    private void replay(List<int[]> replay) {
+        GomokuGame replayed = new GomokuGame(game.boardSize);
+        for (int[] move : replay) {
+            if (replayed.isGameOver() || !replayed.move(move[0], move[1])) {
+                throw new IllegalArgumentException("invalid move " + move[1] + "," + move[0]);
+            }
+        }
+        game = replayed;
+        if (engine != null) {
+            engine.setGame(game);
+        }
+    }
+
+    private void info(String argument) {
+        String[] pair = argument.split("\\s+", 2);
+        if (pair.length < 2) {
+            return;
+        }
+        // Values we have no use for (rule, game_type, folder, evaluate) are ignored, as the protocol asks
+        // INFO never gets an answer, so a value that does not parse is only reported as DEBUG, which managers log,
+        // and the setting keeps its value
+        try {
+            switch (pair[0].toLowerCase(Locale.ROOT)) {
+                case "timeout_turn": turnMillis = Long.parseLong(pair[1]); break;
+                case "timeout_match": matchMillis = Long.parseLong(pair[1]); break;
+                case "time_left": timeLeftMillis = Long.parseLong(pair[1]); break;
+                case "max_memory": maxMemory = Long.parseLong(pair[1]); break;
+                default: break;
+            }
+        }
+        catch (NumberFormatException e) {
+            out.println("DEBUG ignored INFO " + argument);
+        }
+    }
+
+    // Search and play our move, then send it
+    private void answer(long received) throws InterruptedException {
+        if (game.isGameOver()) {
+            throw new IllegalArgumentException("the game is over");
+        }
+        GomokuGameAI ai = engine();
+        long budget = turnBudget();
+        long deadline = received + budget;
+
+        int[] move;
+        if (searches == null) {
+            move = ai.findBestMoveBefore(deadline);
+        }
+        else {
+            Future<int[]> search = searches.submit(() -> ai.findBestMoveBefore(deadline));
+            try {
+                move = search.get();
+            }
+            catch (ExecutionException e) {
+                throw new IllegalStateException("Search failed", e.getCause());
+            }
+            catch (InterruptedException e) {
+                ai.stop();
+                search.cancel(false);
+                throw e;
+            }
+        }
+
+        out.println(String.format(Locale.ROOT, "MESSAGE depth %d score %d nodes %d",
+                ai.getCompletedDepth(), ai.getBestScore(), ai.getNodeCount()));
+        play(move[0], move[1]);
+        out.println(move[1] + "," + move[0]);
+    }
+
+    // Time for this move: the turn limit, a tenth of what is left of the match, and the server's cap
+    private long turnBudget() {
+        long budget = turnMillis > 0 ? turnMillis : 1;
+        if (matchMillis > 0 && timeLeftMillis > 0) {
+            budget = Math.min(budget, timeLeftMillis / 10);
+        }
+        budget = Math.min(budget, maxTurnMillis);
+        return Math.max(budget - budget / 20 - SAFETY_MILLIS, 1);
+    }
+
+    private GomokuGameAI engine() {
+        if (engine == null) {
+            int tableMB = maxTableMB;
+            if (maxMemory > 0) {
+                // Half of the memory allowed goes to the transposition table
+                tableMB = (int) Math.max(1, Math.min(tableMB, maxMemory / 2 / (1024 * 1024)));
+            }
+            try {
+                engine = new GomokuGameAI(game, 4, tableMB, threads);
+            }
+            catch (OutOfMemoryError e) {
+                // Only this session's table failed, the rest of the process goes on
+                throw new IllegalStateException("not enough memory for a " + tableMB + " MB transposition table");
+            }
+            engine.setOpeningBook(book);
+            engine.startSession();
+        }
+        return engine;
+    }
+
+    private static int[] parsePair(String argument) {
+        String[] fields = argument.split(",");
+        if (fields.length != 2) {
+            throw new IllegalArgumentException("expected x,y but got " + argument);
+        }
+        return new int[] {Integer.parseInt(fields[0].trim()), Integer.parseInt(fields[1].trim())};
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        OpeningBook book = null;
+        int threads = 1;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "--book": book = Tournament.Player.loadBook(args[i + 1]); break;
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.US_ASCII));
+        PrintWriter out = new PrintWriter(System.out, false, StandardCharsets.US_ASCII);
+        PiskvorkEngine session = new PiskvorkEngine(in, out, null, Long.MAX_VALUE, threads);
+        session.setOpeningBook(book);
+        session.run();
+    }
+}
@@ -0,0 +1,203 @@
+package gomoku_minimax;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Perft-style check of the search: fixed positions are searched deterministically one depth at a time, and the best
+// move, node count and cutoff count of every depth are compared with the ones recorded in the file
+// A node count above its record by more than the tolerance fails the run, as does a depth the record does not have.
+// Fewer nodes, other moves and other cutoff counts are reported but pass, and --record writes the new counts once a
+// change is accepted
+//
+// File: one position per line, tab separated: id, board size, depth, the moves leading to it as h8 (column letter,
+// row number) separated by spaces, then the recorded move, threat-space search nodes and depths as
+// depth:move:nodes:cutoffs separated by spaces. Blank lines and lines starting with # are kept as they are
+//
+// Usage: SearchRegression [--file search-regression.txt] [--tolerance 2] [--record]
+// exits with status 1 when a check fails
+public class SearchRegression {
+    // What a deterministic search of one position found
+    static class Result {
+        final String move;
+        final long threatNodes;
+        final List<String> moves = new ArrayList<>();
+        final List<Long> nodes = new ArrayList<>();
+        final List<Long> cutoffs = new ArrayList<>();
+
+        Result(String move, long threatNodes) {
+            this.move = move;
+            this.threatNodes = threatNodes;
+        }
+
+        // The recorded columns of the line: move, threat nodes and depths
+        String columns() {
+            StringBuilder line = new StringBuilder(move).append('\t').append(threatNodes).append('\t');
+            for (int i = 0; i < nodes.size(); i++) {
+                if (i > 0) {
+                    line.append(' ');
+                }
+                line.append(i + 1).append(':').append(moves.get(i)).append(':').append(nodes.get(i)).append(':').append(cutoffs.get(i));
+            }
+            return line.toString();
+        }
+
+        static Result parse(String move, String threatNodes, String depths) {
+            Result result = new Result(move, Long.parseLong(threatNodes));
+            for (String depth : depths.trim().isEmpty() ? new String[0] : depths.trim().split("\\s+")) {
+                String[] fields = depth.split(":");
+                if (fields.length != 4 || Integer.parseInt(fields[0]) != result.nodes.size() + 1) {
+                    throw new IllegalArgumentException("bad depth record " + depth);
+                }
+                result.moves.add(fields[1]);
+                result.nodes.add(Long.parseLong(fields[2]));
+                result.cutoffs.add(Long.parseLong(fields[3]));
+            }
+            return result;
+        }
+    }
+
+    // Search the position the moves lead to, from an empty transposition table, depth by depth
+    static Result search(int size, int depth, String moves) {
+        GomokuGame game = new GomokuGame(size);
+        MoveNotation.play(game, moves);
+        if (game.isGameOver()) {
+            throw new IllegalArgumentException("game is over");
+        }
+
+        GomokuGameAI engine = new GomokuGameAI(game, depth);
+        engine.setDeterministic(true);
+        int[] move = engine.findBestMoveToDepth(depth);
+        SearchStats stats = engine.getLastSearchStats();
+        Result result = new Result(name(move), stats.threatNodes);
+        for (SearchStats.Depth record : stats.getDepths()) {
+            result.moves.add(name(record.getBestMove()));
+            result.nodes.add(record.getNodes());
+            result.cutoffs.add(record.getCutoffs());
+        }
+        return result;
+    }
+
+    private static String name(int[] move) {
+        return MoveNotation.formatMove(move[0], move[1]);
+    }
+
+    // Compare a search with its record, print the differences and return whether it passes
+    static boolean check(String id, Result expected, Result actual, double tolerance) {
+        boolean passed = true;
+        List<String> notes = new ArrayList<>();
+        if (actual.threatNodes > expected.threatNodes * (1 + tolerance / 100)) {
+            passed = false;
+            notes.add(String.format(Locale.ROOT, "threat nodes %d -> %d", expected.threatNodes, actual.threatNodes));
+        }
+        for (int i = 0; i < actual.nodes.size(); i++) {
+            if (i >= expected.nodes.size()) {
+                passed = false;
+                notes.add("depth " + (i + 1) + " not recorded");
+                continue;
+            }
+            long before = expected.nodes.get(i);
+            long after = actual.nodes.get(i);
+            if (after > before * (1 + tolerance / 100)) {
+                passed = false;
+                notes.add(String.format(Locale.ROOT, "depth %d nodes %d -> %d (%+.1f%%)", i + 1, before, after,
+                        100.0 * (after - before) / before));
+            }
+            else if (after != before || !actual.cutoffs.get(i).equals(expected.cutoffs.get(i))) {
+                notes.add(String.format(Locale.ROOT, "depth %d nodes %d -> %d, cutoffs %d -> %d", i + 1, before, after,
+                        expected.cutoffs.get(i), actual.cutoffs.get(i)));
+            }
+            if (!actual.moves.get(i).equals(expected.moves.get(i))) {
+                notes.add("depth " + (i + 1) + " move " + expected.moves.get(i) + " -> " + actual.moves.get(i));
+            }
+        }
+        if (!actual.move.equals(expected.move)) {
+            notes.add("move " + expected.move + " -> " + actual.move);
+        }
+        System.out.println((passed ? "ok   " : "FAIL ") + id + (notes.isEmpty() ? "" : ": " + String.join(", ", notes)));
+        return passed;
+    }
+
+    private static long total(Result result) {
+        long nodes = result.threatNodes;
+        for (long depthNodes : result.nodes) {
+            nodes += depthNodes;
+        }
+        return nodes;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get("search-regression.txt");
+        double tolerance = 2;
+        boolean record = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--record": record = true; break;
+                case "--file":
+                case "--tolerance":
+                    if (i + 1 >= args.length) {
+                        throw new IllegalArgumentException("Missing value for " + args[i]);
+                    }
+                    if (args[i].equals("--file")) {
+                        file = Paths.get(args[++i]);
+                    }
+                    else {
+                        tolerance = Double.parseDouble(args[++i]);
+                    }
+                    break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.US_ASCII);
+        List<String> recorded = new ArrayList<>();
+        int failures = 0;
+        long expectedNodes = 0;
+        long actualNodes = 0;
+        long start = System.nanoTime();
+        for (String line : lines) {
+            if (line.isBlank() || line.startsWith("#")) {
+                recorded.add(line);
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 4 && fields.length != 7) {
+                throw new IllegalArgumentException("Expected 4 or 7 fields: " + line);
+            }
+            Result actual = search(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), fields[3]);
+            recorded.add(String.join("\t", fields[0], fields[1], fields[2], fields[3]) + "\t" + actual.columns());
+            actualNodes += total(actual);
+            if (record) {
+                System.out.println("recorded " + fields[0] + ": " + actual.move + ", " + total(actual) + " nodes");
+                continue;
+            }
+            if (fields.length == 4) {
+                System.out.println("FAIL " + fields[0] + ": nothing recorded");
+                failures++;
+                continue;
+            }
+            Result expected = Result.parse(fields[4], fields[5], fields[6]);
+            expectedNodes += total(expected);
+            if (!check(fields[0], expected, actual, tolerance)) {
+                failures++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        if (record) {
+            Files.write(file, recorded, StandardCharsets.US_ASCII);
+            System.out.printf(Locale.ROOT, "Recorded %d nodes to %s in %.1f s%n", actualNodes, file, seconds);
+            return;
+        }
+        System.out.printf(Locale.ROOT, "Nodes %d -> %d (%+.2f%%), %d failed, %.1f s%n", expectedNodes, actualNodes,
+                expectedNodes == 0 ? 0.0 : 100.0 * (actualNodes - expectedNodes) / expectedNodes, failures, seconds);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package gomoku_minimax;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Counters and timings of one findBestMove call, filled in by the search and read after it or through a SearchListener
+// Each search thread counts into its own instance, and the parallel search merges them after every depth
+public class SearchStats {
+    // Notified as the search goes, from the thread that called findBestMove
+    public interface SearchListener {
+        // Root moves as cells x * size + y, best first, with the heuristic scores that order them as in sortActions,
+        // before the first depth. The arrays belong to the search, copy what is kept
+        default void onRootMovesScored(int[] cells, int[] scores, int count) {}
+        default void onDepthCompleted(SearchStats stats, Depth depth) {}
+        default void onSearchCompleted(SearchStats stats) {}
+    }
+
+    // Result of one completed iteration of the search
+    public static class Depth {
+        final int depth;
+        final long nodes;
+        final long cutoffs;
+        final long nanos;
+        final int score;
+        final int[] bestMove;
+
+        Depth(int depth, long nodes, long cutoffs, long nanos, int score, int[] bestMove) {
+            this.depth = depth;
+            this.nodes = nodes;
+            this.cutoffs = cutoffs;
+            this.nanos = nanos;
+            this.score = score;
+            this.bestMove = bestMove;
+        }
+
+        public int getDepth() {return depth;}
+        public long getNodes() {return nodes;}
+        public long getCutoffs() {return cutoffs;}
+        public long getNanos() {return nanos;}
+        public int getScore() {return score;}
+        public int[] getBestMove() {return bestMove.clone();}
+    }
+
+    @Name("gomoku_minimax.Search")
+    @Label("Gomoku Search")
+    @Category("Gomoku")
+    static class SearchEvent extends Event {
+        @Label("Completed Depth")
+        int completedDepth;
+        @Label("Nodes")
+        long nodes;
+        @Label("Cutoffs")
+        long cutoffs;
+        @Label("Threat Nodes")
+        long threatNodes;
+        @Label("Score")
+        int score;
+        @Label("Move")
+        String move;
+    }
+
+    @Name("gomoku_minimax.SearchDepth")
+    @Label("Gomoku Search Depth")
+    @Category("Gomoku")
+    static class DepthEvent extends Event {
+        @Label("Depth")
+        int depth;
+        @Label("Nodes")
+        long nodes;
+        @Label("Cutoffs")
+        long cutoffs;
+        @Label("Score")
+        int score;
+        // 0 unless GomokuGameAI.setDetailedTiming is on
+        @Label("Move Ordering Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long orderingNanos;
+    }
+
+    // Minimax nodes, split into leaves evaluated at the depth limit and interior nodes whose actions were expanded
+    long nodes = 0;
+    long leafNodes = 0;
+    long interiorNodes = 0;
+    // Children searched from interior nodes, and interior nodes that stopped early on an alpha-beta cutoff
+    long movesSearched = 0;
+    long cutoffs = 0;
+    // Principal variation search re-searches of moves that beat the null window, and depths searched again after
+    // failing outside their aspiration window
+    long researches = 0;
+    long aspirationResearches = 0;
+    // Nodes answered straight from the transposition table
+    long tableCutoffs = 0;
+    long threatNodes = 0;
+    // Time spent in getActions, sortActions and leaf calculateHeuristicsScore, only measured with
+    // GomokuGameAI.setDetailedTiming on
+    long generationNanos = 0;
+    long orderingNanos = 0;
+    long evaluationNanos = 0;
+
+    final long startNanos = System.nanoTime();
+    long elapsedNanos = 0;
+    final List<Depth> depths = new ArrayList<>();
+
+    // Fold the counters of a search thread into these
+    void add(SearchStats other) {
+        nodes += other.nodes;
+        leafNodes += other.leafNodes;
+        interiorNodes += other.interiorNodes;
+        movesSearched += other.movesSearched;
+        cutoffs += other.cutoffs;
+        tableCutoffs += other.tableCutoffs;
+        researches += other.researches;
+        aspirationResearches += other.aspirationResearches;
+        threatNodes += other.threatNodes;
+        generationNanos += other.generationNanos;
+        orderingNanos += other.orderingNanos;
+        evaluationNanos += other.evaluationNanos;
+    }
+
+    public long getNodes() {return nodes;}
+    public long getLeafNodes() {return leafNodes;}
+    public long getInteriorNodes() {return interiorNodes;}
+    public long getMovesSearched() {return movesSearched;}
+    public long getCutoffs() {return cutoffs;}
+    public long getTableCutoffs() {return tableCutoffs;}
+    public long getResearches() {return researches;}
+    public long getAspirationResearches() {return aspirationResearches;}
+    public long getThreatNodes() {return threatNodes;}
+    public long getGenerationNanos() {return generationNanos;}
+    public long getOrderingNanos() {return orderingNanos;}
+    public long getEvaluationNanos() {return evaluationNanos;}
+    public long getElapsedNanos() {return elapsedNanos;}
+    public List<Depth> getDepths() {return depths;}
+
+    public double getNodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1e9 / elapsedNanos;
+    }
+
+    // Average number of children searched per expanded node, lower when cutoffs come early
+    public double getAverageBranchingFactor() {
+        return interiorNodes == 0 ? 0 : (double) movesSearched / interiorNodes;
+    }
+
+    // Growth of the node count from the second deepest to the deepest completed depth
+    public double getEffectiveBranchingFactor() {
+        int n = depths.size();
+        if (n < 2 || depths.get(n - 2).nodes == 0) {
+            return 0;
+        }
+        return (double) depths.get(n - 1).nodes / depths.get(n - 2).nodes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("nodes %d (%.0f/s), cutoffs %d, table cutoffs %d, re-searches %d, aspiration re-searches %d, "
+                        + "branching %.2f, ebf %.2f, generation %.1f ms, ordering %.1f ms, evaluation %.1f ms, total %.1f ms",
+                nodes, getNodesPerSecond(), cutoffs, tableCutoffs, researches, aspirationResearches,
+                getAverageBranchingFactor(), getEffectiveBranchingFactor(),
+                generationNanos / 1e6, orderingNanos / 1e6, evaluationNanos / 1e6, elapsedNanos / 1e6);
+    }
+}
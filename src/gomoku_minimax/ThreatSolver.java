@@ -0,0 +1,355 @@
+package gomoku_minimax;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Threat-space search for forced wins that are too deep for the full-width minimax but narrow enough to solve
+// The attacker only plays threats: fours for victory by continuous fours (VCF), and fours or open threes for victory
+// by continuous threats (VCT). The defender only tries the replies that stop the threat or counter it with a four
+// Threats are the HeuristicCounter pattern types: a four leaves a cell that makes five, and an open three leaves a
+// cell that makes an open four
+public class ThreatSolver {
+    // The four line directions, each searched both ways
+    private static final int[][] LINES = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    private final int nodeBudget;
+    private final long timeBudgetMillis;
+    // Wall-clock stop time set from other threads, as the engine's stop gives, or null
+    private final AtomicLong stopTime;
+
+    private Bitboard board;
+    private int size;
+    private int attacker;
+    private int defender;
+    private boolean allowThrees;
+    private int maxDepth;
+    private long deadline;
+    private int nodes;
+    private boolean aborted;
+
+    // Buffers reused from node to node, so a node costs nothing in proportion to the board area
+    // Cells of attack, defend and the defender's fours at each depth, the scratch lists of collectThreats, and the
+    // near mask of nearCells
+    private int[][] attackCells = new int[0][];
+    private int[][] defendCells = new int[0][];
+    private int[][] fourCells = new int[0][];
+    private int[] otherCells;
+    private int[] threeCells;
+    private int[] fiveCells;
+    private long[] near;
+
+    // A time budget of Long.MAX_VALUE leaves only the node budget, so the result does not depend on the machine
+    public ThreatSolver(int nodeBudget, long timeBudgetMillis) {
+        this(nodeBudget, timeBudgetMillis, null);
+    }
+
+    // Also give up once the shared stop time has passed, so a search stopped from another thread does not wait
+    // for the solver
+    public ThreatSolver(int nodeBudget, long timeBudgetMillis, AtomicLong stopTime) {
+        this.nodeBudget = nodeBudget;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.stopTime = stopTime;
+    }
+
+    // Return the first move of a forced win by continuous fours for the player, or null if none was found in budget
+    // maxDepth is the number of attacker moves
+    public int[] solveVCF(Bitboard position, int player, int maxDepth) {
+        return solve(position, player, maxDepth, false, Long.MAX_VALUE);
+    }
+
+    // Same, giving up at the wall-clock limit (System.currentTimeMillis) if it comes before the time budget runs out
+    public int[] solveVCF(Bitboard position, int player, int maxDepth, long limitMillis) {
+        return solve(position, player, maxDepth, false, limitMillis);
+    }
+
+    // Same as solveVCF, also allowing open threes as threats
+    public int[] solveVCT(Bitboard position, int player, int maxDepth) {
+        return solve(position, player, maxDepth, true, Long.MAX_VALUE);
+    }
+
+    public int[] solveVCT(Bitboard position, int player, int maxDepth, long limitMillis) {
+        return solve(position, player, maxDepth, true, limitMillis);
+    }
+
+    private int[] solve(Bitboard position, int player, int depth, boolean threes, long limitMillis) {
+        board = position.copy();
+        if (board.size != size || attackCells.length < depth + 1) {
+            size = board.size;
+            int cells = size * size;
+            attackCells = new int[depth + 1][cells];
+            defendCells = new int[depth + 1][cells];
+            fourCells = new int[depth + 1][cells];
+            otherCells = new int[cells];
+            threeCells = new int[cells];
+            fiveCells = new int[cells];
+            near = new long[size];
+        }
+        attacker = player;
+        defender = (player == 1) ? 2 : 1;
+        allowThrees = threes;
+        maxDepth = depth;
+        deadline = timeBudgetMillis == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + timeBudgetMillis;
+        deadline = Math.min(deadline, limitMillis);
+        nodes = 0;
+        aborted = false;
+
+        int move = attack(0);
+        return move < 0 ? null : new int[] {move / size, move % size};
+    }
+
+    // Return the attacker move that wins by force from here as x * size + y, or -1 if none was found
+    private int attack(int depth) {
+        long limit = stopTime != null ? Math.min(deadline, stopTime.get()) : deadline;
+        if (++nodes > nodeBudget || (limit != Long.MAX_VALUE && System.currentTimeMillis() >= limit)) {
+            aborted = true;
+        }
+        if (aborted) {
+            return -1;
+        }
+
+        int[] cells = attackCells[depth];
+        // Five straight away
+        if (collectFiveCells(attacker, cells) > 0) {
+            return cells[0];
+        }
+        if (depth == maxDepth) {
+            return -1;
+        }
+
+        // When the defender threatens five, the only move is to block it, and the block has to keep the initiative
+        int count = collectFiveCells(defender, cells);
+        if (count > 1) {
+            return -1;
+        }
+        boolean forced = count == 1;
+        if (!forced) {
+            count = collectThreats(attacker, allowThrees, cells);
+        }
+
+        for (int i = 0; i < count; i++) {
+            int x = cells[i] / size;
+            int y = cells[i] % size;
+            board.set(x, y, attacker);
+            boolean win = defend(x, y, depth);
+            board.set(x, y, 0);
+            if (win) {
+                return cells[i];
+            }
+            if (aborted) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    // The attacker has just played (x, y) and the defender has no five to play, check whether every reply loses
+    private boolean defend(int x, int y, int depth) {
+        int[] replies = defendCells[depth];
+
+        // A four has a single reply, and two fives at once cannot both be blocked
+        int fives = collectFiveCellsThrough(attacker, x, y, replies);
+        if (fives >= 2) {
+            return true;
+        }
+        if (fives == 1) {
+            return refutedBy(replies[0], depth);
+        }
+
+        // An open three can be stopped on its lines, or answered with a four that gains a tempo
+        if (!allowThrees || !hasOpenFourCell(x, y)) {
+            return false;
+        }
+        int count = collectThreeDefences(x, y, replies);
+        int[] fours = fourCells[depth];
+        count = appendMissing(replies, count, fours, collectThreats(defender, false, fours));
+        for (int i = 0; i < count; i++) {
+            if (!refutedBy(replies[i], depth)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Play the defender reply and check whether the attacker still wins
+    private boolean refutedBy(int reply, int depth) {
+        int x = reply / size;
+        int y = reply % size;
+        board.set(x, y, defender);
+        boolean win = attack(depth + 1) >= 0;
+        board.set(x, y, 0);
+        return win;
+    }
+
+    // Empty cells anywhere on the board where the player makes five
+    private int collectFiveCells(int player, int[] cells) {
+        int count = 0;
+        nearCells(player);
+        for (int x = 0; x < size; x++) {
+            long bits = near[x];
+            while (bits != 0) {
+                int y = Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (hasStonesNear(player, x, y, 4) && makesFive(player, x, y)) {
+                    cells[count++] = x * size + y;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Set near to the empty cells within 4 steps of one of the player's stones, one mask per row, which holds every
+    // cell the scans can accept, so they visit the region around the stones rather than the whole board
+    private void nearCells(int player) {
+        Arrays.fill(near, 0);
+        for (int x = 0; x < size; x++) {
+            long stones = board.row(player, x);
+            if (stones == 0) {
+                continue;
+            }
+            long spread = stones;
+            for (int step = 1; step <= 4; step++) {
+                spread |= (stones << step) | (stones >>> step);
+            }
+            for (int nearX = Math.max(0, x - 4); nearX <= Math.min(size - 1, x + 4); nearX++) {
+                near[nearX] |= spread;
+            }
+        }
+        long cells = (1L << size) - 1;
+        for (int x = 0; x < size; x++) {
+            near[x] &= cells & ~(board.row(1, x) | board.row(2, x));
+        }
+    }
+
+    // Empty cells within 4 steps of (x, y) on its lines where the player makes five
+    private int collectFiveCellsThrough(int player, int x, int y, int[] cells) {
+        int count = 0;
+        for (int[] line : LINES) {
+            for (int step = -4; step <= 4; step++) {
+                int newX = x + step * line[0];
+                int newY = y + step * line[1];
+                if (step != 0 && isOnBoard(newX, newY) && board.isEmpty(newX, newY) && makesFive(player, newX, newY)) {
+                    cells[count++] = newX * size + newY;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Moves making two fives at once, then other fours, then moves making an open three when threes are allowed
+    // (attacker only), so the quickest wins are tried first
+    private int collectThreats(int player, boolean threes, int[] cells) {
+        int count = 0;
+        int otherCount = 0;
+        int threeCount = 0;
+        nearCells(player);
+        for (int x = 0; x < size; x++) {
+            long bits = near[x];
+            while (bits != 0) {
+                int y = Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (!hasStonesNear(player, x, y, threes ? 2 : 3)) {
+                    continue;
+                }
+                board.set(x, y, player);
+                int fives = collectFiveCellsThrough(player, x, y, fiveCells);
+                if (fives >= 2) {
+                    cells[count++] = x * size + y;
+                }
+                else if (fives == 1) {
+                    otherCells[otherCount++] = x * size + y;
+                }
+                else if (threes && hasOpenFourCell(x, y)) {
+                    threeCells[threeCount++] = x * size + y;
+                }
+                board.set(x, y, 0);
+            }
+        }
+        System.arraycopy(otherCells, 0, cells, count, otherCount);
+        count += otherCount;
+        System.arraycopy(threeCells, 0, cells, count, threeCount);
+        return count + threeCount;
+    }
+
+    // Empty cells within 5 steps of the open three at (x, y) on its lines that leave the attacker no open four there
+    private int collectThreeDefences(int x, int y, int[] cells) {
+        int count = 0;
+        for (int[] line : LINES) {
+            for (int step = -5; step <= 5; step++) {
+                int newX = x + step * line[0];
+                int newY = y + step * line[1];
+                if (step == 0 || !isOnBoard(newX, newY) || !board.isEmpty(newX, newY)) {
+                    continue;
+                }
+                board.set(newX, newY, defender);
+                if (!hasOpenFourCell(x, y)) {
+                    cells[count++] = newX * size + newY;
+                }
+                board.set(newX, newY, 0);
+            }
+        }
+        return count;
+    }
+
+    // Check whether the attacker can make an open four with a cell within 4 steps of (x, y) on its lines
+    private boolean hasOpenFourCell(int x, int y) {
+        for (int[] line : LINES) {
+            for (int step = -4; step <= 4; step++) {
+                int newX = x + step * line[0];
+                int newY = y + step * line[1];
+                if (step == 0 || !isOnBoard(newX, newY) || !board.isEmpty(newX, newY)) {
+                    continue;
+                }
+                board.set(newX, newY, attacker);
+                long counts = PatternTable.countThrough(board, newX, newY, attacker);
+                board.set(newX, newY, 0);
+                if (PatternTable.count(counts, PatternTable.OPEN_FOUR) > 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Append the first extraCount cells of extra that cells does not hold yet, return the new count
+    private int appendMissing(int[] cells, int count, int[] extra, int extraCount) {
+        for (int j = 0; j < extraCount; j++) {
+            int cell = extra[j];
+            boolean present = false;
+            for (int i = 0; i < count && !present; i++) {
+                present = cells[i] == cell;
+            }
+            if (!present) {
+                cells[count++] = cell;
+            }
+        }
+        return count;
+    }
+
+    private boolean makesFive(int player, int x, int y) {
+        board.set(x, y, player);
+        boolean five = board.checkWin(x, y);
+        board.set(x, y, 0);
+        return five;
+    }
+
+    // Cheap filter before the exact tests: some line through (x, y) has enough of the player's stones within 4 steps
+    private boolean hasStonesNear(int player, int x, int y, int minimum) {
+        return Long.bitCount(board.row(player, x) & span(y)) >= minimum
+                || Long.bitCount(board.column(player, y) & span(x)) >= minimum
+                || Long.bitCount(board.diagonalDown(player, x, y) & span(x)) >= minimum
+                || Long.bitCount(board.diagonalUp(player, x, y) & span(x)) >= minimum;
+    }
+
+    // Bits position - 4 to position + 4 of a line, the top bit is never a cell
+    private static long span(int position) {
+        return ((1L << Math.min(position + 5, 63)) - 1) & ~((1L << Math.max(0, position - 4)) - 1);
+    }
+
+    private boolean isOnBoard(int x, int y) {
+        return x >= 0 && x < size && y >= 0 && y < size;
+    }
+
+    // Threat nodes visited by the last solve, and whether it ran out of budget
+    public int getNodeCount() {return nodes;}
+    public boolean isAborted() {return aborted;}
+}
@@ -0,0 +1,374 @@
+package gomoku_minimax;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Headless match between two engine settings, to check that a speed change does not cost playing strength
+// Games run on a fixed pool, one pair of engines per game, and every finished game is appended to a record file
+// and folded into the Elo and SPRT statistics at once, so a long match can be read or stopped at any point
+//
+// Usage: Tournament [--a depth=3] [--b depth=3,time=200] [--games 1000] [--threads N] [--size 15] [--opening 4]
+//                   [--seed 1] [--sprt 0,10] [--out tournament.txt]
+// Engine settings are engine (minimax or mcts), depth (plies, or the depth cap with a time), time (ms per move, 0 for
+// a fixed depth or playout budget), table (transposition table MB), threats and pvs (on or off), book (opening book
+// file), threads (search threads of each engine), and for mcts playouts (per move without a time) and tree (MB)
+// e.g. --a engine=mcts,time=200 --b time=200 compares the two searches on the same time per move
+public class Tournament {
+    // Settings of one side of the match
+    static class Player {
+        final String name;
+        boolean monteCarlo = false;
+        int depth = 3;
+        long timeMillis = 0;
+        int tableMB = 4;
+        boolean threats = true;
+        boolean principalVariationSearch = true;
+        OpeningBook book;
+        int threads = 1;
+        int playouts = MonteCarloEngine.DEFAULT_PLAYOUTS;
+        int treeMB = 16;
+
+        Player(String name, String settings) {
+            this.name = name;
+            for (String setting : settings.split(",")) {
+                String[] pair = setting.split("=");
+                if (pair.length != 2) {
+                    throw new IllegalArgumentException("Engine setting should be name=value: " + setting);
+                }
+                switch (pair[0]) {
+                    case "engine":
+                        if (!pair[1].equals("minimax") && !pair[1].equals("mcts")) {
+                            throw new IllegalArgumentException("Engine should be minimax or mcts: " + pair[1]);
+                        }
+                        monteCarlo = pair[1].equals("mcts");
+                        break;
+                    case "depth": depth = Integer.parseInt(pair[1]); break;
+                    case "time": timeMillis = Long.parseLong(pair[1]); break;
+                    case "table": tableMB = Integer.parseInt(pair[1]); break;
+                    case "threats": threats = pair[1].equals("on"); break;
+                    case "book": book = loadBook(pair[1]); break;
+                    case "pvs": principalVariationSearch = pair[1].equals("on"); break;
+                    case "threads": threads = Integer.parseInt(pair[1]); break;
+                    case "playouts": playouts = Integer.parseInt(pair[1]); break;
+                    case "tree": treeMB = Integer.parseInt(pair[1]); break;
+                    default: throw new IllegalArgumentException("Unknown engine setting: " + pair[0]);
+                }
+            }
+            if (depth < 1 || threads < 1 || playouts < 1) {
+                throw new IllegalArgumentException("Depth, threads and playouts should be at least 1");
+            }
+        }
+
+        // The book is mapped once and shared by the engines of every game
+        static OpeningBook loadBook(String path) {
+            try {
+                return OpeningBook.load(Paths.get(path));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        GomokuEngine create(GomokuGame game) {
+            if (monteCarlo) {
+                // The tree is searched again from scratch every move, so there is nothing to follow
+                MonteCarloEngine engine = new MonteCarloEngine(game, playouts, treeMB, threads);
+                if (!threats) {
+                    engine.setThreatSearch(0, 0);
+                }
+                return engine;
+            }
+            GomokuGameAI engine = new GomokuGameAI(game, depth, tableMB, threads);
+            if (!threats) {
+                engine.setThreatSearch(0, 0);
+            }
+            engine.setOpeningBook(book);
+            engine.setPrincipalVariationSearch(principalVariationSearch);
+            // The engine follows the game it was made for, rather than rebuilding its state on every move
+            engine.startSession();
+            return engine;
+        }
+
+        int[] move(GomokuEngine engine) {
+            return timeMillis > 0 ? engine.findBestMoveBefore(System.currentTimeMillis() + timeMillis) : engine.findBestMove();
+        }
+
+        @Override
+        public String toString() {
+            if (monteCarlo) {
+                return name + ": engine=mcts,time=" + timeMillis + ",playouts=" + playouts + ",tree=" + treeMB
+                        + ",threats=" + (threats ? "on" : "off") + ",threads=" + threads;
+            }
+            return name + ": depth=" + depth + ",time=" + timeMillis + ",table=" + tableMB + ",threats=" + (threats ? "on" : "off")
+                    + ",pvs=" + (principalVariationSearch ? "on" : "off") + ",threads=" + threads + (book != null ? ",book" : "");
+        }
+    }
+
+    // Wins, draws and losses of engine A, with the Elo difference and the sequential probability ratio test on them
+    static class Score {
+        int wins = 0;
+        int draws = 0;
+        int losses = 0;
+
+        void add(double result) {
+            if (result == 1) {
+                wins++;
+            }
+            else if (result == 0) {
+                losses++;
+            }
+            else {
+                draws++;
+            }
+        }
+
+        int games() {return wins + draws + losses;}
+
+        double mean() {
+            return (wins + 0.5 * draws) / games();
+        }
+
+        // Variance of a single game result
+        double variance() {
+            double mean = mean();
+            return (wins * (1 - mean) * (1 - mean) + draws * (0.5 - mean) * (0.5 - mean) + losses * mean * mean) / games();
+        }
+
+        static double elo(double score) {
+            return -400 * Math.log10(1 / score - 1);
+        }
+
+        static double expectedScore(double elo) {
+            return 1 / (1 + Math.pow(10, -elo / 400));
+        }
+
+        // Half width of the 95% confidence interval, from the normal approximation of the mean
+        double eloMargin() {
+            if (variance() == 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double deviation = 1.96 * Math.sqrt(variance() / games());
+            double low = Math.max(mean() - deviation, 1e-6);
+            double high = Math.min(mean() + deviation, 1 - 1e-6);
+            return (elo(high) - elo(low)) / 2;
+        }
+
+        // Log-likelihood ratio of H1 (A is elo1 stronger) against H0 (elo0), normal approximation of the GSPRT
+        double llr(double elo0, double elo1) {
+            if (games() < 2) {
+                return 0;
+            }
+            // One virtual win and one virtual loss keep a one-sided start of the match from having no variance
+            double mean = mean();
+            double variance = (variance() * games() + (1 - mean) * (1 - mean) + mean * mean) / (games() + 2);
+            double score0 = expectedScore(elo0);
+            double score1 = expectedScore(elo1);
+            return games() * (score1 - score0) * (2 * mean - score0 - score1) / (2 * variance);
+        }
+    }
+
+    private final Player a;
+    private final Player b;
+    private final int boardSize;
+    private final int openingMoves;
+    private final long seed;
+    private final Score score = new Score();
+    // SPRT hypotheses in Elo, and the LLR bounds for 5% false positives and negatives
+    private double elo0 = 0;
+    private double elo1 = 0;
+    private boolean sprt = false;
+    private final double lowerBound = Math.log(0.05 / 0.95);
+    private final double upperBound = Math.log(0.95 / 0.05);
+    private volatile boolean finished = false;
+
+    Tournament(Player a, Player b, int boardSize, int openingMoves, long seed) {
+        if (openingMoves < 0 || openingMoves > 8) {
+            throw new IllegalArgumentException("Opening should have between 0 and 8 random moves");
+        }
+        MoveNotation.checkBoardSize(boardSize);
+        this.a = a;
+        this.b = b;
+        this.boardSize = boardSize;
+        this.openingMoves = openingMoves;
+        this.seed = seed;
+    }
+
+    void setSprt(double elo0, double elo1) {
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.sprt = true;
+    }
+
+    // Play one game and return its record line, or null if the match was decided before it started
+    // Both games of a pair start from the same random opening, with the engines' colors swapped
+    String playGame(int index) {
+        if (finished) {
+            return null;
+        }
+        boolean aBlack = index % 2 == 0;
+        Player black = aBlack ? a : b;
+        Player white = aBlack ? b : a;
+
+        GomokuGame game = new GomokuGame(boardSize);
+        StringBuilder moves = new StringBuilder();
+        Random random = new Random(seed * 1000003 + index / 2);
+        int center = boardSize / 2;
+        for (int i = 0; i < openingMoves; i++) {
+            int x;
+            int y;
+            do {
+                x = center - 2 + random.nextInt(5);
+                y = center - 2 + random.nextInt(5);
+            } while (!game.isEmpty(x, y));
+            game.move(x, y);
+            appendMove(moves, x, y);
+        }
+
+        GomokuEngine blackEngine = black.create(game);
+        GomokuEngine whiteEngine = white.create(game);
+        try {
+            while (!game.isGameOver()) {
+                boolean blackToMove = game.getCurrentPlayer() == 1;
+                int[] move = blackToMove ? black.move(blackEngine) : white.move(whiteEngine);
+                if (!game.move(move[0], move[1])) {
+                    throw new IllegalStateException("Engine " + (blackToMove ? black : white).name + " played an illegal move in game " + index);
+                }
+                appendMove(moves, move[0], move[1]);
+            }
+        }
+        finally {
+            blackEngine.shutdown();
+            whiteEngine.shutdown();
+        }
+
+        String result = game.getWinner() == 1 ? "1-0" : game.getWinner() == 2 ? "0-1" : "1/2";
+        return index + " " + black.name + " " + white.name + " " + result + moves;
+    }
+
+    // Column letter and row number, as in h8
+    private static void appendMove(StringBuilder moves, int x, int y) {
+        moves.append(' ').append(MoveNotation.formatMove(x, y));
+    }
+
+    // Fold a finished game into the statistics, and return whether this game made the SPRT decide
+    synchronized boolean addResult(String record) {
+        String[] fields = record.split(" ", 5);
+        double blackScore = fields[3].equals("1-0") ? 1 : fields[3].equals("0-1") ? 0 : 0.5;
+        score.add(fields[1].equals(a.name) ? blackScore : 1 - blackScore);
+        if (!sprt || finished) {
+            return false;
+        }
+        double llr = score.llr(elo0, elo1);
+        finished = llr <= lowerBound || llr >= upperBound;
+        return finished;
+    }
+
+    synchronized String summary() {
+        StringBuilder text = new StringBuilder(String.format(Locale.ROOT, "Games %d: %s +%d =%d -%d, Elo %+.1f +- %.1f",
+                score.games(), a.name, score.wins, score.draws, score.losses,
+                Score.elo(Math.min(Math.max(score.mean(), 1e-6), 1 - 1e-6)), score.eloMargin()));
+        if (sprt) {
+            double llr = score.llr(elo0, elo1);
+            text.append(String.format(Locale.ROOT, ", LLR %.2f (%.2f, %.2f) [%.1f, %.1f]", llr, lowerBound, upperBound, elo0, elo1));
+            if (llr >= upperBound) {
+                text.append(" H1 accepted");
+            }
+            else if (llr <= lowerBound) {
+                text.append(" H0 accepted");
+            }
+        }
+        return text.toString();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String aSettings = "depth=3";
+        String bSettings = "depth=3";
+        int games = 1000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int size = 15;
+        int opening = 4;
+        long seed = 1;
+        String sprt = null;
+        String out = "tournament.txt";
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--a": aSettings = value; break;
+                case "--b": bSettings = value; break;
+                case "--games": games = Integer.parseInt(value); break;
+                case "--threads": threads = Integer.parseInt(value); break;
+                case "--size": size = Integer.parseInt(value); break;
+                case "--opening": opening = Integer.parseInt(value); break;
+                case "--seed": seed = Long.parseLong(value); break;
+                case "--sprt": sprt = value; break;
+                case "--out": out = value; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        Tournament tournament = new Tournament(new Player("A", aSettings), new Player("B", bSettings), size, opening, seed);
+        if (sprt != null) {
+            String[] bounds = sprt.split(",");
+            tournament.setSprt(Double.parseDouble(bounds[0]), Double.parseDouble(bounds[1]));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(out))) {
+            writer.write("# " + tournament.a + "  " + tournament.b + "  size=" + size + " opening=" + opening + " seed=" + seed);
+            writer.newLine();
+
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < games; i++) {
+                int index = i;
+                results.add(pool.submit(() -> {
+                    String record = tournament.playGame(index);
+                    if (record == null) {
+                        return;
+                    }
+                    boolean decided = tournament.addResult(record);
+                    // Records go out in the order games finish, each flushed so the file can be followed live
+                    synchronized (writer) {
+                        try {
+                            writer.write(record);
+                            writer.newLine();
+                            writer.flush();
+                        }
+                        catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        System.out.println(tournament.summary());
+                    }
+                    if (decided) {
+                        System.out.println("SPRT decided, skipping the games not started yet");
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                }
+                catch (ExecutionException e) {
+                    throw new IllegalStateException("Game failed", e.getCause());
+                }
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        System.out.println(tournament.summary());
+    }
+}
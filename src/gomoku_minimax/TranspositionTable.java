@@ -0,0 +1,89 @@
+package gomoku_minimax;
+
+import java.util.Arrays;
+
+// Fixed-size hash table of search results keyed by Zobrist hash
+// Entries are packed into a single long: score (32 bits), move + 1 (16 bits), depth (8 bits), bound (2 bits), age (5 bits)
+// Slots are grouped in buckets of two: the first keeps the deepest result, the second is always replaced
+// The table is shared between search threads without locking: each slot keeps key ^ entry next to the entry,
+// so a slot torn by two concurrent writes no longer matches its key and reads as a miss
+public class TranspositionTable {
+    public static final int EXACT = 0;
+    public static final int LOWER = 1;
+    public static final int UPPER = 2;
+
+    // Marks an occupied slot so a stored entry is never 0
+    private static final long VALID = 1L << 58;
+
+    private final long[] keys;
+    private final long[] entries;
+    private final int mask;
+    private int age;
+
+    public TranspositionTable(int sizeMB) {
+        if (sizeMB < 1) {
+            throw new IllegalArgumentException("Transposition table size should be at least 1 MB");
+        }
+        // Each slot takes 16 bytes, round down to a power of two so the index is a mask
+        long slots = Long.highestOneBit((long) sizeMB * 1024 * 1024 / 16);
+        slots = Math.min(slots, 1L << 30);
+        this.keys = new long[(int) slots];
+        this.entries = new long[(int) slots];
+        this.mask = (int) slots - 2;
+        this.age = 0;
+    }
+
+    // Start a new search, older entries become the first to be replaced
+    public void newSearch() {
+        age = (age + 1) & 31;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(entries, 0);
+        age = 0;
+    }
+
+    // Return the packed entry for the key, or 0 if the position is not stored
+    public long probe(long key) {
+        int index = (int) key & mask;
+        for (int slot = index; slot <= index + 1; slot++) {
+            long entry = entries[slot];
+            if (entry != 0 && (keys[slot] ^ entry) == key) {
+                return entry;
+            }
+        }
+        return 0;
+    }
+
+    // move is the cell index x * boardSize + y of the best move, or -1 if there is none
+    public void store(long key, int depth, int bound, int score, int move) {
+        long entry = (score & 0xFFFFFFFFL)
+                | ((long) ((move + 1) & 0xFFFF) << 32)
+                | ((long) (depth & 0xFF) << 48)
+                | ((long) bound << 56)
+                | VALID
+                | ((long) age << 59);
+
+        int index = (int) key & mask;
+        long deepest = entries[index];
+        // Keep the deepest result unless it is from an older search or the same position is being updated
+        if (deepest == 0 || (keys[index] ^ deepest) == key || depth(deepest) <= depth || age(deepest) != age) {
+            keys[index] = key ^ entry;
+            entries[index] = entry;
+        }
+        else {
+            keys[index + 1] = key ^ entry;
+            entries[index + 1] = entry;
+        }
+    }
+
+    // Accessors for the packed entry
+    public static int score(long entry) {return (int) entry;}
+    public static int move(long entry) {return (int) ((entry >>> 32) & 0xFFFF) - 1;}
+    public static int depth(long entry) {return (int) ((entry >>> 48) & 0xFF);}
+    public static int bound(long entry) {return (int) ((entry >>> 56) & 0x3);}
+    private static int age(long entry) {return (int) (entry >>> 59);}
+
+    public int capacity() {return keys.length;}
+}